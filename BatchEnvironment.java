@@ -0,0 +1,231 @@
+import java.util.SplittableRandom;
+
+/**
+ * BatchEnvironment class: Trains an engine's Q-table with a whole batch of agents that all take one step at the
+ * same time (lockstep). The state of the agents is kept as one primitive array per field (position, steps,
+ * episodes, return and epsilon), so a step is a few tight loops over the batch instead of one agent object and
+ * one decideAction call after the other.
+ * <p>
+ * Every step runs in phases. The random numbers deciding which agents explore are drawn first, then the next
+ * cells (an exploring agent draws one of the possible moves of its cell) and the values the Bellman targets need
+ * are gathered from the engine, the targets and returns are computed, and
+ * finally the new Q-values are written back and finished episodes are restarted. The target phase is pure
+ * arithmetic over parallel double arrays without any branch or call, which is the loop shape HotSpot compiles to
+ * SIMD instructions, so the vector units do the arithmetic for many agents at once. The gathers and scatters in
+ * between depend on where every agent is and stay scalar.
+ * <p>
+ * An episode of an agent starts on the engine's start cell and ends on the finish node or after rows * cols
+ * steps, then the agent starts over. A hole only costs its reward and the agent walks on, the same way holes are
+ * treated by the engine's own training. When two agents step on the same cell in the same step, both
+ * targets are computed from the same old Q-value and the last write wins, like a synchronous batch update.
+ *
+ * @author Harshal
+ */
+public class BatchEnvironment {
+
+    // Engine holding the map and the Q-table
+    private final Engine engine;
+    private final double alpha;
+    private final double gamma;
+    private final int maxSteps;
+    private final SplittableRandom random;
+
+    // State of every agent
+    private final int agents;
+    private final int[] positions;
+    private final int[] steps;
+    private final int[] episodes;
+    private final double[] returns;
+    private final double[] lastReturns;
+    private final double[] epsilons;
+
+    // Per step scratch arrays of the batch
+    private final double[] uniforms;
+    private final int[] nexts;
+    private final double[] rewards;
+    private final double[] qValues;
+    private final double[] maxQValues;
+    private final double[] targets;
+
+    // Totals of all agents
+    private long totalSteps;
+    private long totalEpisodes;
+    private long goals;
+    private double lastMaxDelta;
+
+    /**
+     * BatchEnvironment constructor: every agent starts on the engine's start cell.
+     *
+     * @param engine
+     * @param hyperparameters
+     * @param agents
+     * @param random
+     */
+    public BatchEnvironment(Engine engine, Hyperparameters hyperparameters, int agents, SplittableRandom random) {
+        if (agents < 1) {
+            throw new IllegalArgumentException("agents must be at least 1 but was " + agents);
+        }
+        // Every update would be rounded away on a Q-table too coarse for learning, see Engine.isLearnable
+        if (!engine.isLearnable()) {
+            throw new IllegalArgumentException("the " + engine.getQTable().getClass().getSimpleName()
+                    + " is too coarse to be learnt on this map");
+        }
+        this.engine = engine;
+        this.alpha = hyperparameters.getAlpha();
+        this.gamma = hyperparameters.getGamma();
+        this.maxSteps = engine.getCellCount();
+        this.random = random;
+        this.agents = agents;
+
+        positions = new int[agents];
+        steps = new int[agents];
+        episodes = new int[agents];
+        returns = new double[agents];
+        lastReturns = new double[agents];
+        epsilons = new double[agents];
+
+        uniforms = new double[agents];
+        nexts = new int[agents];
+        rewards = new double[agents];
+        qValues = new double[agents];
+        maxQValues = new double[agents];
+        targets = new double[agents];
+
+        for (int i = 0; i < agents; i++) {
+            restart(i);
+        }
+    }
+
+    /**
+     * run method takes the given number of lockstep steps.
+     *
+     * @param count
+     * @return long - number of agent steps (and Q-value updates)
+     */
+    public long run(int count) {
+        for (int i = 0; i < count; i++) {
+            step();
+        }
+        return (long) count * agents;
+    }
+
+    /**
+     * step method moves every agent one cell and updates the Q-value of the cell it moved to.
+     */
+    public void step() {
+        // Draw the random numbers deciding between exploring and the greedy move from one stream
+        for (int i = 0; i < agents; i++) {
+            uniforms[i] = random.nextDouble();
+        }
+
+        // Epsilon-greedy choice of the next cell: a random possible move, every one equally likely, or the cached
+        // greedy move. An agent without a greedy move stays where it is.
+        for (int i = 0; i < agents; i++) {
+            int position = positions[i];
+            if (uniforms[i] > epsilons[i]) {
+                nexts[i] = engine.getBestMove(position) == Policy.NO_MOVE ? position : engine.getMaxQIndex(position);
+            } else {
+                int[] actions = engine.getAction(position);
+                nexts[i] = actions.length == 0 ? position
+                        : engine.getNeighbour(position, actions[random.nextInt(actions.length)]);
+            }
+        }
+
+        // Gather what Bellman's equation needs about the next cells
+        for (int i = 0; i < agents; i++) {
+            int next = nexts[i];
+            rewards[i] = engine.rewardAt(next);
+            qValues[i] = engine.getQValue(next);
+            maxQValues[i] = engine.getMaxQValue(next);
+        }
+
+        // Bellman targets and returns of the whole batch, straight line arithmetic the JIT vectorizes
+        for (int i = 0; i < agents; i++) {
+            targets[i] = qValues[i] + alpha * (rewards[i] + gamma * maxQValues[i] - qValues[i]);
+            returns[i] += rewards[i];
+        }
+        double maxDelta = 0;
+        for (int i = 0; i < agents; i++) {
+            maxDelta = Math.max(maxDelta, Math.abs(targets[i] - qValues[i]));
+        }
+        lastMaxDelta = maxDelta;
+
+        // Write the new Q-values back and move the agents, restarting the ones whose episode ended
+        for (int i = 0; i < agents; i++) {
+            int next = nexts[i];
+            engine.setQValue(next, targets[i]);
+            positions[i] = next;
+            steps[i]++;
+
+            byte type = engine.getCellType(next);
+            if (type == Engine.FINISH || steps[i] >= maxSteps) {
+                if (type == Engine.FINISH) {
+                    goals++;
+                }
+                lastReturns[i] = returns[i];
+                episodes[i]++;
+                totalEpisodes++;
+                restart(i);
+            }
+        }
+        totalSteps += agents;
+    }
+
+    /**
+     * restart method puts an agent back on the start cell for its next episode.
+     *
+     * @param agent
+     */
+    private void restart(int agent) {
+        positions[agent] = engine.getStart();
+        steps[agent] = 0;
+        returns[agent] = 0;
+        epsilons[agent] = engine.calculateEpsilon(episodes[agent]);
+    }
+
+    /**
+     * meanLastReturn method returns the mean return of the last finished episode of every agent.
+     *
+     * @return double
+     */
+    public double meanLastReturn() {
+        double sum = 0;
+        for (int i = 0; i < agents; i++) {
+            sum += lastReturns[i];
+        }
+        return sum / agents;
+    }
+
+    // Getters
+    public int getAgents() {
+        return agents;
+    }
+
+    public int getPosition(int agent) {
+        return positions[agent];
+    }
+
+    public int getEpisodes(int agent) {
+        return episodes[agent];
+    }
+
+    public double getReturn(int agent) {
+        return returns[agent];
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    public long getTotalEpisodes() {
+        return totalEpisodes;
+    }
+
+    public long getGoals() {
+        return goals;
+    }
+
+    public double getLastMaxDelta() {
+        return lastMaxDelta;
+    }
+}
@@ -0,0 +1,745 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmark class: Small benchmark harness for the training engine. It runs without a display and without any
+ * dependency, so it can be compiled and run the same way as the simulation itself.
+ * <p>
+ * Usage: java Benchmark alloc [gridSize]
+ * <br>
+ * Usage: java Benchmark scaling [gridSize] [maxWorkers]
+ * <br>
+ * Usage: java Benchmark suite [sizes] [densities] [baseline.csv]
+ * <br>
+ * Usage: java Benchmark solvers [gridSize] [density] [threads]
+ * <br>
+ * Usage: java Benchmark batch [gridSize] [maxAgents]
+ * <br>
+ * Usage: java Benchmark precision [gridSize] [density] [maps] [gamma]
+ * <br>
+ * Usage: java Benchmark hierarchy [gridSize] [density] [maxLevels] [threads]
+ * <p>
+ * The suite measures the hot paths of the engine for every grid size and hole density (comma separated lists)
+ * and prints ops/s and bytes allocated per op as CSV. When a baseline CSV of an earlier run is given, every
+ * benchmark that got more than 10% slower is reported and the run fails.
+ *
+ * @author Harshal
+ */
+public class Benchmark {
+
+    // Number of training calls used to warm up the JIT before measuring
+    private static final int WARMUP = 50;
+
+    // Number of training calls we measure
+    private static final int MEASURE = 20;
+
+    // Suite: time spent warming up, number of measured iterations and the time of every iteration
+    private static final long SUITE_WARMUP_NANOS = 300_000_000L;
+    private static final int SUITE_ITERATIONS = 5;
+    private static final long SUITE_ITERATION_NANOS = 200_000_000L;
+
+    // Solvers: a solver that has not found a path to the finish node after this long gives up
+    private static final long SOLVER_LIMIT_NANOS = 30_000_000_000L;
+
+    // Precision: the learnt Q-tables are trained on maps of the game's size for as many moves as a short game
+    private static final int LEARNT_SIZE = 6;
+    private static final int LEARNT_MOVES = 100;
+
+    // Precision: moves whose dense Q-values differ by less than this fraction are ties, and the fraction of the
+    // moves a learnt table has to share with the dense one. A dense table learnt with other randoms shares 0.89 to
+    // 0.96 of its moves, so that is how far learning alone spreads them.
+    private static final double TIE = 1e-6;
+    private static final double LEARNT_MATCHING = 0.9;
+
+    // A benchmark counts as a regression when it gets this much slower than the baseline
+    private static final double REGRESSION = 0.10;
+
+    // The checksums end up here, so the JIT cannot remove the benchmarked work
+    static volatile long sink;
+
+    // Header of the CSV printed by the suite
+    private static final String HEADER = "benchmark,size,density,opsPerSecond,error,bytesPerOp";
+
+    /**
+     * Operation interface: One benchmarked operation. run performs the operation count times and returns a
+     * checksum of the results, so the JIT cannot remove the work.
+     */
+    interface Operation {
+        long run(long count);
+    }
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "alloc";
+
+        if (mode.equals("alloc")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+            // Fail the run if a training step allocates anything
+            if (allocationPerStep(gridSize) > 0) {
+                System.exit(1);
+            }
+        } else if (mode.equals("scaling")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+            int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            scaling(gridSize, maxWorkers);
+        } else if (mode.equals("suite")) {
+            String sizes = args.length > 1 ? args[1] : "4,16,64,256,1024,2048";
+            String densities = args.length > 2 ? args[2] : "0.0,0.1,0.3";
+            String baseline = args.length > 3 ? args[3] : null;
+            if (!suite(sizes, densities, baseline)) {
+                System.exit(1);
+            }
+        } else if (mode.equals("solvers")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+            double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            solvers(gridSize, density, threads);
+        } else if (mode.equals("batch")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+            int maxAgents = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+            batch(gridSize, maxAgents);
+        } else if (mode.equals("hierarchy")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+            double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+            int maxLevels = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            hierarchy(gridSize, density, maxLevels, threads);
+        } else if (mode.equals("precision")) {
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+            double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+            int maps = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            double gamma = args.length > 4 ? Double.parseDouble(args[4]) : 0.9;
+            // Fail the run if a smaller Q-table leads the agent another way than the dense one
+            if (!precision(gridSize, density, maps, gamma)) {
+                System.exit(1);
+            }
+        } else {
+            System.err.println("Unknown benchmark: " + mode);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * createEngine method creates an engine with the finish node in the bottom right corner and a diagonal of
+     * holes, so the benchmark does not depend on the random map generation.
+     *
+     * @param gridSize
+     * @param random
+     * @return Engine
+     */
+    static Engine createEngine(int gridSize, SplittableRandom random) {
+        // Early stopping is off, so every training call runs all of its episodes
+        Hyperparameters hyperparameters = new Hyperparameters();
+        hyperparameters.setTolerance(0);
+        Engine engine = new Engine(gridSize, gridSize, hyperparameters, random);
+        engine.setCellType(gridSize - 1, gridSize - 1, Engine.FINISH);
+        for (int i = 1; i < gridSize - 1; i += 2) {
+            engine.setCellType(i, i, Engine.HOLE);
+        }
+        return engine;
+    }
+
+    /**
+     * createEngine method creates a solvable map with the finish node in the bottom right corner and holes on the
+     * given fraction of the cells off the protected path.
+     *
+     * @param gridSize
+     * @param density
+     * @param random
+     * @return Engine
+     */
+    static Engine createEngine(int gridSize, double density, SplittableRandom random) {
+        Engine engine = new Engine(gridSize, gridSize, new Hyperparameters(), random);
+        MapGenerator.generateDensity(engine, density, 1, random);
+        return engine;
+    }
+
+    /**
+     * allocationPerStep method measures how many bytes a single training step allocates on the heap. The budget
+     * of a training step is zero bytes.
+     *
+     * @param gridSize
+     * @return double - bytes allocated per training step
+     */
+    static double allocationPerStep(int gridSize) {
+        Engine engine = createEngine(gridSize, new SplittableRandom(42));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up so that we measure the compiled training loop
+        int pos = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            pos = engine.qLearningAlgorithm(0);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        long steps = 0;
+        for (int i = 0; i < MEASURE; i++) {
+            pos += engine.qLearningAlgorithm(0);
+            steps += (long) engine.getLastEpisodes() * engine.getAction(0).length;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        double perStep = (double) allocated / steps;
+        System.out.println("grid " + gridSize + "x" + gridSize + ": " + allocated + " bytes over " + steps
+                + " steps (" + perStep + " bytes/step, checksum " + pos + ")");
+        return perStep;
+    }
+
+    /**
+     * batch method measures the agent steps per second of the lockstep batch environment for batches of 1, 4, 16,
+     * ... agents up to maxAgents on the same map, and how far the greedy policy gets after the run. The agents walk
+     * through holes the way the engine's training does, an episode only ends on the finish node or after
+     * rows * cols steps.
+     *
+     * @param gridSize
+     * @param maxAgents
+     */
+    static void batch(int gridSize, int maxAgents) {
+        System.out.println("agents,size,stepsPerSecond,episodes,goals,pathLength");
+        for (int agents = 1; ; agents = Math.min(agents * 4, maxAgents)) {
+            Engine engine = createEngine(gridSize, 0.1, new SplittableRandom(42));
+            Hyperparameters hyperparameters = new Hyperparameters();
+            BatchEnvironment environment = new BatchEnvironment(engine, hyperparameters, agents,
+                    new SplittableRandom(7));
+
+            // Warm up, then measure for about a second
+            environment.run(Math.max(1, 1_000_000 / agents));
+            long steps = 0;
+            long begin = System.nanoTime();
+            long elapsed;
+            do {
+                steps += environment.run(Math.max(1, 100_000 / agents));
+                elapsed = System.nanoTime() - begin;
+            } while (elapsed < 1_000_000_000L);
+
+            System.out.printf(Locale.ROOT, "%d,%d,%.0f,%d,%d,%d%n", agents, gridSize, steps * 1e9 / elapsed,
+                    environment.getTotalEpisodes(), environment.getGoals(), engine.greedyPathLength(engine.getStart()));
+            if (agents == maxAgents) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * hierarchy method trains the same map the same way the game does, first without a warm start and then
+     * warm-started from 1, 2, ... up to maxLevels coarse levels, and prints as CSV how long it took until the
+     * greedy path from the start reaches the finish node, warm start included. The Bellman updates of the warm
+     * start (the smoothing sweeps and the training of the coarse levels) and of the training afterwards are
+     * printed as well, since the sweeps run on several threads and the milliseconds alone hide their cost.
+     *
+     * @param gridSize
+     * @param density
+     * @param maxLevels
+     * @param threads - threads sweeping a level
+     */
+    static void hierarchy(int gridSize, double density, int maxLevels, int threads) {
+        System.out.println("levels,size,density,threads,warmStartMillis,coarseMoves,sweeps,warmStartUpdates,millis,"
+                + "moves,updates,pathLength");
+        for (int levels = 0; levels <= maxLevels; levels++) {
+            Hyperparameters hyperparameters = new Hyperparameters();
+            SplittableRandom random = new SplittableRandom(42);
+            Engine engine = new Engine(gridSize, gridSize, hyperparameters, random);
+            MapGenerator.generateDensity(engine, density, 1, random);
+
+            long begin = System.nanoTime();
+            HierarchicalTrainer hierarchy = null;
+            if (levels > 0) {
+                hierarchy = new HierarchicalTrainer(engine, hyperparameters, levels, random.split(), threads);
+                if (hierarchy.warmStart(engine.getCellCount()) < levels) {
+                    // The map is too small for more levels
+                    break;
+                }
+            }
+            long warmStart = System.nanoTime() - begin;
+
+            int moves = 0;
+            long updates = 0;
+            int currentPos = engine.getStart();
+            while (engine.greedyPathLength(engine.getStart()) < 0 && System.nanoTime() - begin < SOLVER_LIMIT_NANOS) {
+                int actions = engine.getAction(currentPos).length;
+                currentPos = engine.qLearningAlgorithm(currentPos);
+                engine.moveAgent(currentPos);
+                moves++;
+                updates += (long) engine.getLastEpisodes() * actions;
+                // If we have reached the finish node, start again
+                if (engine.getCellType(currentPos / gridSize, currentPos % gridSize) == Engine.FINISH) {
+                    currentPos = engine.getStart();
+                    engine.moveAgent(currentPos);
+                }
+            }
+            long millis = (System.nanoTime() - begin) / 1_000_000;
+            System.out.printf(Locale.ROOT, "%d,%d,%.2f,%d,%d,%d,%d,%d,%d,%d,%d,%d%n", levels, gridSize, density,
+                    threads, warmStart / 1_000_000, hierarchy == null ? 0 : hierarchy.getLastMoves(),
+                    hierarchy == null ? 0 : hierarchy.getLastSweeps(),
+                    hierarchy == null ? 0 : hierarchy.getLastUpdates(), millis, moves, updates,
+                    engine.greedyPathLength(engine.getStart()));
+        }
+    }
+
+    /**
+     * precision method plans the Q-table of the same reference maps with every Q-table type and compares the
+     * greedy policy to the one of the dense table. It prints as CSV the bytes per cell of every type, the fraction of
+     * the cells (not holes or the finish node) whose greedy move is as good as the dense one (the dense table values
+     * it the same, see TIE), the fraction required, and on how many maps the greedy path from the start is as long
+     * as the dense one (or reaches the finish node where the dense one does not). A planned table has to match
+     * every move.
+     * <p>
+     * Then it does the same with Q-tables learnt with the default hyperparameters, the way the game learns them,
+     * on maps of LEARNT_SIZE x LEARNT_SIZE. A learnt table has to match LEARNT_MATCHING of the moves. A type the
+     * engine refuses to learn (see Engine.isLearnable) is reported as refused instead, with a note on stderr.
+     *
+     * @param gridSize
+     * @param density
+     * @param maps
+     * @param gamma - discount rate of the planned tables
+     * @return boolean - false if a type matched fewer moves than required or a greedy path from the start differs
+     * from the dense one on any map
+     */
+    static boolean precision(int gridSize, double density, int maps, double gamma) {
+        QTableType[] types = QTableType.values();
+        long[] matching = new long[types.length];
+        long[] compared = new long[types.length];
+        int[] samePaths = new int[types.length];
+        long[] bytes = new long[types.length];
+
+        for (int map = 0; map < maps; map++) {
+            Engine[] engines = new Engine[types.length];
+            for (int t = 0; t < types.length; t++) {
+                Hyperparameters hyperparameters = new Hyperparameters();
+                hyperparameters.setGamma(gamma);
+                hyperparameters.setQTableType(types[t]);
+                // The same seed gives every type the same map
+                SplittableRandom random = new SplittableRandom(map);
+                engines[t] = new Engine(gridSize, gridSize, hyperparameters, random);
+                MapGenerator.generateDensity(engines[t], density, 1, random);
+                Planner planner = new Planner(engines[t], Solver.PRIORITIZED_SWEEPING, 1);
+                planner.plan();
+                planner.shutdown();
+                bytes[t] = engines[t].getQTable().getMemoryBytes();
+            }
+            comparePolicies(engines, matching, compared, samePaths);
+        }
+
+        boolean passed = true;
+        System.out.println("qTable,solver,size,density,gamma,bytesPerCell,matchingMoves,requiredMatching,samePaths");
+        for (int t = 0; t < types.length; t++) {
+            System.out.printf(Locale.ROOT, "%s,%s,%d,%.2f,%.2f,%.1f,%.4f,%.4f,%d/%d%n", types[t].getName(),
+                    Solver.PRIORITIZED_SWEEPING.getName(), gridSize, density, gamma,
+                    (double) bytes[t] / (gridSize * gridSize), (double) matching[t] / compared[t], 1.0,
+                    samePaths[t], maps);
+            passed &= checkPrecision(types[t], Solver.PRIORITIZED_SWEEPING, matching[t], compared[t], 1.0,
+                    samePaths[t], maps);
+        }
+
+        Arrays.fill(matching, 0);
+        Arrays.fill(compared, 0);
+        Arrays.fill(samePaths, 0);
+        boolean[] refused = new boolean[types.length];
+        Hyperparameters defaults = new Hyperparameters();
+        for (int map = 0; map < maps; map++) {
+            Engine[] engines = new Engine[types.length];
+            for (int t = 0; t < types.length; t++) {
+                Hyperparameters hyperparameters = new Hyperparameters();
+                hyperparameters.setQTableType(types[t]);
+                // The same seed gives every type the same map and the same training randoms
+                SplittableRandom random = new SplittableRandom(map);
+                engines[t] = new Engine(LEARNT_SIZE, LEARNT_SIZE, hyperparameters, random.split());
+                MapGenerator.generate(engines[t], random.split());
+                bytes[t] = engines[t].getQTable().getMemoryBytes();
+                refused[t] = !engines[t].isLearnable();
+                if (refused[t]) {
+                    engines[t] = null;
+                    continue;
+                }
+                int currentPos = engines[t].getStart();
+                for (int move = 0; move < LEARNT_MOVES; move++) {
+                    currentPos = engines[t].qLearningAlgorithm(currentPos);
+                    engines[t].moveAgent(currentPos);
+                    // If we have reached the finish node, start again
+                    if (engines[t].getCellType(currentPos / LEARNT_SIZE, currentPos % LEARNT_SIZE) == Engine.FINISH) {
+                        currentPos = engines[t].getStart();
+                        engines[t].moveAgent(currentPos);
+                    }
+                }
+            }
+            comparePolicies(engines, matching, compared, samePaths);
+        }
+
+        for (int t = 0; t < types.length; t++) {
+            String solver = Solver.Q_LEARNING.getName();
+            double cellBytes = (double) bytes[t] / (LEARNT_SIZE * LEARNT_SIZE);
+            if (refused[t]) {
+                System.out.printf(Locale.ROOT, "%s,%s,%d,-,%.2f,%.1f,refused,-,refused%n", types[t].getName(),
+                        solver, LEARNT_SIZE, defaults.getGamma(), cellBytes);
+                System.err.printf(Locale.ROOT, "REFUSED %s %s: the engine refuses to learn it with the default "
+                        + "hyperparameters, so only its %s row measures it%n", types[t].getName(), solver,
+                        Solver.PRIORITIZED_SWEEPING.getName());
+            } else {
+                System.out.printf(Locale.ROOT, "%s,%s,%d,-,%.2f,%.1f,%.4f,%.4f,%d/%d%n", types[t].getName(), solver,
+                        LEARNT_SIZE, defaults.getGamma(), cellBytes, (double) matching[t] / compared[t],
+                        LEARNT_MATCHING, samePaths[t], maps);
+                passed &= checkPrecision(types[t], Solver.Q_LEARNING, matching[t], compared[t], LEARNT_MATCHING,
+                        samePaths[t], maps);
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * checkPrecision method tells whether a Q-table type led the agent like the dense one: at least the required
+     * fraction of matching moves and the same greedy path on every map. A failure is reported on stderr.
+     *
+     * @param type
+     * @param solver
+     * @param matching
+     * @param compared
+     * @param required - fraction of the moves that has to match
+     * @param samePaths
+     * @param maps
+     * @return boolean
+     */
+    private static boolean checkPrecision(QTableType type, Solver solver, long matching, long compared,
+            double required, int samePaths, int maps) {
+        if (matching >= required * compared && samePaths == maps) {
+            return true;
+        }
+        System.err.printf(Locale.ROOT, "FAILED %s %s: %.4f of the moves match (%.4f required), %d/%d same paths%n",
+                type.getName(), solver.getName(), (double) matching / compared, required, samePaths, maps);
+        return false;
+    }
+
+    /**
+     * comparePolicies method compares the greedy policy of the Q-table of every type on one map to the dense one:
+     * it counts the cells (not holes or the finish node) whose greedy move is as good, and the types whose greedy
+     * path from the start is as long (or reaches the finish node where the dense one does not). Missing engines
+     * are left out.
+     *
+     * @param engines - one engine of every Q-table type, by the ordinal of the type
+     * @param matching
+     * @param compared
+     * @param samePaths
+     */
+    private static void comparePolicies(Engine[] engines, long[] matching, long[] compared, int[] samePaths) {
+        Engine dense = engines[QTableType.DENSE.ordinal()];
+        int rows = dense.getRows();
+        int cols = dense.getCols();
+        int pathLength = dense.greedyPathLength(dense.getStart());
+        for (int t = 0; t < engines.length; t++) {
+            if (engines[t] == null) {
+                continue;
+            }
+            for (int i = 0; i < rows * cols; i++) {
+                byte type = dense.getCellType(i / cols, i % cols);
+                if (type != Engine.HOLE && type != Engine.FINISH) {
+                    compared[t]++;
+                    // A move to a neighbour the dense table values as high as its own choice is as good
+                    double best = dense.getQValue(dense.getMaxQIndex(i));
+                    double chosen = dense.getQValue(engines[t].getMaxQIndex(i));
+                    if (Math.abs(chosen - best) <= TIE * Math.max(1, Math.abs(best))) {
+                        matching[t]++;
+                    }
+                }
+            }
+            int length = engines[t].greedyPathLength(engines[t].getStart());
+            if (length == pathLength || pathLength < 0 && length >= 0) {
+                samePaths[t]++;
+            }
+        }
+    }
+
+    /**
+     * scaling method measures how many Q-value updates per second the parallel trainer does with 1, 2, 4, ... up
+     * to maxWorkers workers, and the speedup compared to a single worker. Every worker count, 1 included, trains
+     * on the shared compare-and-set path, so the speedup only shows what the extra workers add. The plain path a
+     * single worker takes on its own is measured first for reference.
+     *
+     * @param gridSize
+     * @param maxWorkers
+     */
+    static void scaling(int gridSize, int maxWorkers) {
+        System.out.printf("grid %dx%d,  1 worker, plain: %,.0f updates/s%n", gridSize, gridSize,
+                measureTrainer(gridSize, 1, false));
+        double single = 0;
+        for (int workers = 1; ; workers = Math.min(workers * 2, maxWorkers)) {
+            double perSecond = measureTrainer(gridSize, workers, true);
+            if (workers == 1) {
+                single = perSecond;
+            }
+            System.out.printf("grid %dx%d, %2d workers, shared: %,.0f updates/s (speedup %.2fx)%n",
+                    gridSize, gridSize, workers, perSecond, perSecond / single);
+            if (workers == maxWorkers) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * measureTrainer method measures the Q-value updates per second of a parallel trainer for about a second.
+     *
+     * @param gridSize
+     * @param workers
+     * @param shared
+     * @return double - updates per second
+     */
+    private static double measureTrainer(int gridSize, int workers, boolean shared) {
+        Engine engine = createEngine(gridSize, new SplittableRandom(42));
+        ParallelTrainer trainer = new ParallelTrainer(engine, workers, 42, shared);
+        // Train from the middle of the map so every episode has four actions
+        int start = engine.index(gridSize / 2, gridSize / 2);
+
+        // Warm up, then measure for about a second
+        for (int i = 0; i < WARMUP; i++) {
+            trainer.train(start, 10000 * workers);
+        }
+        long updates = 0;
+        long begin = System.nanoTime();
+        long elapsed;
+        do {
+            updates += trainer.train(start, 100000 * workers);
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < 1_000_000_000L);
+        trainer.shutdown();
+        return updates * 1e9 / elapsed;
+    }
+
+    /**
+     * solvers method runs every solver on the same map the same way the game does, moving the agent after every
+     * training call, and prints as CSV how long each one took until the greedy path from the start reaches the
+     * finish node, and how many Q-value updates that needed.
+     *
+     * @param gridSize
+     * @param density
+     * @param threads
+     */
+    static void solvers(int gridSize, double density, int threads) {
+        System.out.println("solver,size,density,threads,millis,updates,moves,pathLength");
+        for (Solver solver : Solver.values()) {
+            Engine engine = createEngine(gridSize, density, new SplittableRandom(42));
+            Planner planner = solver == Solver.Q_LEARNING ? null : new Planner(engine, solver, threads);
+            ParallelTrainer trainer = planner == null && threads > 1 ? new ParallelTrainer(engine, threads, 42) : null;
+
+            long updates = 0;
+            int moves = 0;
+            int currentPos = engine.getStart();
+            long begin = System.nanoTime();
+            while (engine.greedyPathLength(engine.getStart()) < 0 && System.nanoTime() - begin < SOLVER_LIMIT_NANOS) {
+                if (planner != null) {
+                    currentPos = planner.qLearningAlgorithm(currentPos);
+                    updates += planner.getLastUpdates();
+                } else if (trainer != null) {
+                    updates += trainer.train(currentPos, engine.getEpisodes());
+                    currentPos = engine.getMaxQIndex(currentPos);
+                } else {
+                    int actions = engine.getAction(currentPos).length;
+                    currentPos = engine.qLearningAlgorithm(currentPos);
+                    updates += (long) engine.getLastEpisodes() * actions;
+                }
+                engine.moveAgent(currentPos);
+                moves++;
+            }
+            long millis = (System.nanoTime() - begin) / 1_000_000;
+            if (planner != null) {
+                planner.shutdown();
+            }
+            if (trainer != null) {
+                trainer.shutdown();
+            }
+            System.out.printf(Locale.ROOT, "%s,%d,%.2f,%d,%d,%d,%d,%d%n", solver.getName(), gridSize, density, threads,
+                    millis, updates, moves, engine.greedyPathLength(engine.getStart()));
+        }
+    }
+
+    /**
+     * suite method runs every benchmark for every grid size and hole density and prints the results as CSV.
+     *
+     * @param sizes
+     * @param densities
+     * @param baseline
+     * @return boolean - false if a benchmark regressed compared to the baseline
+     */
+    static boolean suite(String sizes, String densities, String baseline) {
+        Map<String, Double> previous = baseline == null ? new HashMap<>() : readBaseline(baseline);
+        boolean passed = true;
+
+        System.out.println(HEADER);
+        for (String size : sizes.split(",")) {
+            int gridSize = Integer.parseInt(size.trim());
+
+            // Map generation does not depend on the hole density
+            passed &= report("mapGeneration", gridSize, Double.NaN, measure(count -> {
+                long checksum = 0;
+                for (long i = 0; i < count; i++) {
+                    SplittableRandom random = new SplittableRandom(i);
+                    Engine engine = new Engine(gridSize, gridSize, new Hyperparameters(), random);
+                    MapGenerator.generate(engine, random);
+                    checksum += engine.getCellType(gridSize / 2, gridSize / 2);
+                }
+                return checksum;
+            }), previous);
+
+            for (String value : densities.split(",")) {
+                double density = Double.parseDouble(value.trim());
+                Engine engine = createEngine(gridSize, density, new SplittableRandom(42));
+                int cells = gridSize * gridSize;
+
+                // Walk through the cells with a large prime stride, so we don't just measure a sequential scan
+                int stride = 7919 % cells == 0 ? 1 : 7919;
+
+                passed &= report("qLearningAlgorithm", gridSize, density, measure(count -> {
+                    long checksum = 0;
+                    for (long i = 0; i < count; i++) {
+                        checksum += engine.qLearningAlgorithm(0);
+                    }
+                    return checksum;
+                }), previous);
+                passed &= report("getMaxQValue", gridSize, density, measure(count -> {
+                    double checksum = 0;
+                    int index = 0;
+                    for (long i = 0; i < count; i++) {
+                        checksum += engine.getMaxQValue(index);
+                        index = (index + stride) % cells;
+                    }
+                    return (long) checksum;
+                }), previous);
+                passed &= report("getMaxQIndex", gridSize, density, measure(count -> {
+                    long checksum = 0;
+                    int index = 0;
+                    for (long i = 0; i < count; i++) {
+                        checksum += engine.getMaxQIndex(index);
+                        index = (index + stride) % cells;
+                    }
+                    return checksum;
+                }), previous);
+                passed &= report("getAction", gridSize, density, measure(count -> {
+                    long checksum = 0;
+                    int index = 0;
+                    for (long i = 0; i < count; i++) {
+                        checksum += engine.getAction(index).length;
+                        index = (index + stride) % cells;
+                    }
+                    return checksum;
+                }), previous);
+                passed &= report("changeAgentPos", gridSize, density, measure(count -> {
+                    long checksum = 0;
+                    int index = 0;
+                    for (long i = 0; i < count; i++) {
+                        engine.moveAgent(index);
+                        checksum += engine.getAgent();
+                        index = (index + stride) % cells;
+                    }
+                    engine.moveAgent(0);
+                    return checksum;
+                }), previous);
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * measure method warms the operation up and then runs it for a fixed number of timed iterations. It returns
+     * the mean ops/s, the standard deviation of the ops/s and the bytes allocated per op.
+     *
+     * @param operation
+     * @return double[] - ops/s, error and bytes per op
+     */
+    static double[] measure(Operation operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long checksum = 0;
+
+        // Warm up while finding a batch size that takes about a tenth of an iteration
+        long batch = 1;
+        long begin = System.nanoTime();
+        while (System.nanoTime() - begin < SUITE_WARMUP_NANOS) {
+            long start = System.nanoTime();
+            checksum += operation.run(batch);
+            if (System.nanoTime() - start < SUITE_ITERATION_NANOS / 10) {
+                batch *= 2;
+            }
+        }
+
+        double[] opsPerSecond = new double[SUITE_ITERATIONS];
+        long ops = 0;
+        long allocated = 0;
+        for (int i = 0; i < SUITE_ITERATIONS; i++) {
+            long count = 0;
+            long before = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                checksum += operation.run(batch);
+                count += batch;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < SUITE_ITERATION_NANOS);
+            allocated += threads.getThreadAllocatedBytes(thread) - before;
+            ops += count;
+            opsPerSecond[i] = count * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for (double value : opsPerSecond) {
+            mean += value / SUITE_ITERATIONS;
+        }
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean) / SUITE_ITERATIONS;
+        }
+        sink = checksum;
+        return new double[]{mean, Math.sqrt(variance), (double) allocated / ops};
+    }
+
+    /**
+     * report method prints one result as CSV and compares it with the baseline.
+     *
+     * @param benchmark
+     * @param gridSize
+     * @param density
+     * @param result
+     * @param baseline
+     * @return boolean - false if the benchmark regressed
+     */
+    static boolean report(String benchmark, int gridSize, double density, double[] result,
+            Map<String, Double> baseline) {
+        String key = benchmark + "," + gridSize + "," + (Double.isNaN(density) ? "" : Double.toString(density));
+        System.out.println(key + String.format(Locale.ROOT, ",%.1f,%.1f,%.2f", result[0], result[1], result[2]));
+
+        Double previous = baseline.get(key);
+        if (previous != null && result[0] < previous * (1 - REGRESSION)) {
+            System.err.printf(Locale.ROOT, "REGRESSION %s: %.1f ops/s, baseline %.1f ops/s%n", key, result[0],
+                    previous);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * readBaseline method reads the ops/s of every benchmark from the CSV of an earlier suite run.
+     *
+     * @param file
+     * @return Map - ops/s by benchmark, size and density
+     */
+    static Map<String, Double> readBaseline(String file) {
+        Map<String, Double> baseline = new HashMap<>();
+        try {
+            List<String> lines = Files.readAllLines(Paths.get(file));
+            for (String line : lines) {
+                String[] fields = line.split(",", -1);
+                if (line.equals(HEADER) || fields.length < 4) {
+                    continue;
+                }
+                baseline.put(fields[0] + "," + fields[1] + "," + fields[2], Double.parseDouble(fields[3]));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read baseline " + file, e);
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Checkpoint class: Saves the Q-table, the map and the training counters in a compact binary file and loads them
+ * back. A checkpoint can write itself periodically from a background thread, so the training never stops for it.
+ * <p>
+ * The file is little endian: a 32 byte header (magic, version, rows, cols, agent, start, episodes), the cell
+ * types as one byte per cell, zero padding up to a multiple of 8 bytes and the Q-values as one double per cell.
+ * Files are loaded through memory mapped regions straight into the arrays.
+ * <p>
+ * A snapshot of a sparse Q-table is written in version 2 of the format, which keeps its chunks as they are: after
+ * the padding every chunk of 2^Engine.CHUNK_SHIFT cells holds the number of stored Q-values as an int, then their
+ * offsets in the chunk as shorts and the Q-values as doubles, or -1 and a double per cell for a dense chunk. The
+ * file then only grows with the stored Q-values, 10 bytes each, on top of the byte per cell of the cell types.
+ *
+ * @author Harshal
+ */
+public class Checkpoint {
+
+    // "QLCK" and the version of the file format
+    private static final int MAGIC = 0x514C434B;
+    private static final int VERSION = 1;
+    private static final int SPARSE_VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+
+    // Size of the buffer used for writing and of the regions mapped for reading
+    private static final int WRITE_CHUNK = 1 << 20;
+    private static final long MAP_CHUNK = 1L << 30;
+
+    // File to write to and where the snapshots come from
+    private final Path path;
+    private final Supplier<Snapshot> source;
+    private ScheduledExecutorService executor;
+
+    // Number of checkpoints written so far
+    private volatile long written;
+
+    /**
+     * Checkpoint constructor
+     *
+     * @param path
+     * @param source
+     */
+    public Checkpoint(Path path, Supplier<Snapshot> source) {
+        this.path = path;
+        this.source = source;
+    }
+
+    /**
+     * start method writes a checkpoint every period milliseconds on a background thread.
+     *
+     * @param periodMillis
+     */
+    public synchronized void start(long periodMillis) {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::save, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stop method stops the periodic checkpoints and writes a last one.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        save();
+    }
+
+    /**
+     * save method writes the latest snapshot of the source.
+     */
+    public void save() {
+        save(source.get());
+    }
+
+    /**
+     * save method writes the given snapshot, for callers that take their snapshots themselves.
+     *
+     * @param snapshot
+     */
+    public void save(Snapshot snapshot) {
+        try {
+            write(snapshot, path);
+            written++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * write method writes a snapshot to a temporary file first and then moves it over the checkpoint, so a crash
+     * while writing never leaves a broken checkpoint behind.
+     *
+     * @param snapshot
+     * @param path
+     * @throws IOException
+     */
+    public static void write(Snapshot snapshot, Path path) throws IOException {
+        int cells = snapshot.getRows() * snapshot.getCols();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+            // Header
+            buffer.putInt(MAGIC).putInt(snapshot.isSparse() ? SPARSE_VERSION : VERSION).putInt(snapshot.getRows())
+                    .putInt(snapshot.getCols()).putInt(snapshot.getAgent()).putInt(snapshot.getStart())
+                    .putLong(snapshot.getEpisodes());
+
+            // Cell types, padded to a multiple of 8 bytes
+            for (int i = 0; i < cells; i++) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                buffer.put(snapshot.getCellType(i));
+            }
+            for (int i = 0; i < padding(cells); i++) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                buffer.put((byte) 0);
+            }
+
+            // Q-values
+            if (snapshot.isSparse()) {
+                writeChunks(snapshot, channel, buffer);
+            } else {
+                for (int i = 0; i < cells; i++) {
+                    if (buffer.remaining() < Double.BYTES) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putDouble(snapshot.getQValue(i));
+                }
+            }
+            flush(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * writeChunks method writes the Q-values of a sparse snapshot chunk by chunk, the stored ones of a sparse chunk
+     * and every one of a dense chunk.
+     *
+     * @param snapshot
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void writeChunks(Snapshot snapshot, FileChannel channel, ByteBuffer buffer) throws IOException {
+        int chunks = ((snapshot.getRows() * snapshot.getCols() - 1) >>> Engine.CHUNK_SHIFT) + 1;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            short[] offsets = snapshot.getQOffsetChunk(chunk);
+            double[] values = snapshot.getQValueChunk(chunk);
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(offsets == null ? -1 : offsets.length);
+            for (int i = 0; offsets != null && i < offsets.length; i++) {
+                if (buffer.remaining() < Short.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putShort(offsets[i]);
+            }
+            for (double value : values) {
+                if (buffer.remaining() < Double.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putDouble(value);
+            }
+        }
+    }
+
+    /**
+     * read method maps a checkpoint file into memory and returns its content as a snapshot.
+     *
+     * @param path
+     * @return Snapshot
+     * @throws IOException
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != MAGIC || (version != VERSION && version != SPARSE_VERSION)) {
+                throw new IOException(path + " is not a Q-learning checkpoint");
+            }
+            int rows = header.getInt();
+            int cols = header.getInt();
+            int agent = header.getInt();
+            int start = header.getInt();
+            long episodes = header.getLong();
+
+            long cells = (long) rows * cols;
+            long qOffset = HEADER_SIZE + cells + padding(cells);
+            boolean sparse = version == SPARSE_VERSION;
+            if (rows < 1 || cols < 1 || cells > Integer.MAX_VALUE
+                    || (!sparse && channel.size() != qOffset + cells * Double.BYTES)) {
+                throw new IOException(path + " is truncated or corrupt");
+            }
+
+            // The snapshot keeps the cells in chunks, and every mapped region holds a whole number of chunks
+            int chunks = (int) ((cells - 1) >>> Engine.CHUNK_SHIFT) + 1;
+            byte[][] cellTypes = new byte[chunks][];
+            double[][] qValues = new double[chunks][];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int length = (int) Math.min(1 << Engine.CHUNK_SHIFT, cells - ((long) chunk << Engine.CHUNK_SHIFT));
+                cellTypes[chunk] = new byte[length];
+                if (!sparse) {
+                    qValues[chunk] = new double[length];
+                }
+            }
+            for (long done = 0; done < cells; ) {
+                int length = (int) Math.min(MAP_CHUNK, cells - done);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + done, length);
+                for (int read = 0; read < length; ) {
+                    byte[] chunk = cellTypes[(int) ((done + read) >>> Engine.CHUNK_SHIFT)];
+                    region.get(chunk);
+                    read += chunk.length;
+                }
+                done += length;
+            }
+            if (sparse) {
+                short[][] qOffsets = readChunks(path, channel, qOffset, cellTypes, qValues);
+                return new Snapshot(rows, cols, cellTypes, qValues, qOffsets, agent, start, episodes, 0);
+            }
+            for (long done = 0; done < cells; ) {
+                int length = (int) Math.min(MAP_CHUNK / Double.BYTES, cells - done);
+                DoubleBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, qOffset + done * Double.BYTES,
+                        (long) length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                for (int read = 0; read < length; ) {
+                    double[] chunk = qValues[(int) ((done + read) >>> Engine.CHUNK_SHIFT)];
+                    region.get(chunk);
+                    read += chunk.length;
+                }
+                done += length;
+            }
+            return new Snapshot(rows, cols, cellTypes, qValues, agent, start, episodes, 0);
+        }
+    }
+
+    /**
+     * readChunks method reads the Q-values of a sparse checkpoint chunk by chunk through a buffer, since the
+     * chunks do not line up with the mapped regions anymore.
+     *
+     * @param path
+     * @param channel
+     * @param position - where the Q-values start in the file
+     * @param cellTypes - the chunks of cell types, to know the length of every chunk
+     * @param qValues - filled with the Q-values of every chunk
+     * @return short[][] - the offsets of every sparse chunk, null for a dense chunk
+     * @throws IOException
+     */
+    private static short[][] readChunks(Path path, FileChannel channel, long position, byte[][] cellTypes,
+            double[][] qValues) throws IOException {
+        short[][] qOffsets = new short[cellTypes.length][];
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        channel.position(position);
+        for (int chunk = 0; chunk < cellTypes.length; chunk++) {
+            int length = cellTypes[chunk].length;
+            int stored = fill(channel, buffer, Integer.BYTES) ? buffer.getInt() : -2;
+            if (stored < -1 || stored > length) {
+                throw new IOException(path + " is truncated or corrupt");
+            }
+            if (stored >= 0) {
+                short[] offsets = new short[stored];
+                for (int i = 0; i < stored; i++) {
+                    if (!fill(channel, buffer, Short.BYTES)) {
+                        throw new IOException(path + " is truncated or corrupt");
+                    }
+                    offsets[i] = buffer.getShort();
+                    // Offsets have to be in order for the lookups of the snapshot
+                    if (offsets[i] < 0 || offsets[i] >= length || (i > 0 && offsets[i] <= offsets[i - 1])) {
+                        throw new IOException(path + " is truncated or corrupt");
+                    }
+                }
+                qOffsets[chunk] = offsets;
+            }
+            double[] values = new double[stored >= 0 ? stored : length];
+            for (int i = 0; i < values.length; i++) {
+                if (!fill(channel, buffer, Double.BYTES)) {
+                    throw new IOException(path + " is truncated or corrupt");
+                }
+                values[i] = buffer.getDouble();
+            }
+            qValues[chunk] = values;
+        }
+        if (buffer.hasRemaining() || channel.position() != channel.size()) {
+            throw new IOException(path + " is truncated or corrupt");
+        }
+        return qOffsets;
+    }
+
+    /**
+     * fill method reads from the channel until the buffer holds at least the given number of bytes.
+     *
+     * @param channel
+     * @param buffer - in reading mode
+     * @param bytes
+     * @return boolean - false if the file ended first
+     * @throws IOException
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * flush method writes everything in the buffer to the channel and clears it.
+     *
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * padding method returns the bytes needed after the cell types to align the Q-values to 8 bytes.
+     *
+     * @param cells
+     * @return int
+     */
+    private static int padding(long cells) {
+        return (int) ((Double.BYTES - (HEADER_SIZE + cells) % Double.BYTES) % Double.BYTES);
+    }
+}
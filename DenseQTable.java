@@ -0,0 +1,62 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * DenseQTable class: A Q-table keeping the Q-value of every cell in one flat double array. Reads and writes are
+ * a single array access and compareAndSet is atomic, so any number of threads can train on it at the same time.
+ *
+ * @author Harshal
+ */
+public class DenseQTable implements QTable {
+
+    // Atomic access to the Q-values for training on several threads
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(double[].class);
+
+    // Q-value of every cell
+    private final double[] values;
+
+    /**
+     * DenseQTable constructor
+     *
+     * @param cells
+     */
+    public DenseQTable(int cells) {
+        values = new double[cells];
+    }
+
+    @Override
+    public double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void set(int index, double value) {
+        values[index] = value;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, double expected, double value) {
+        return VALUES.compareAndSet(values, index, expected, value);
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public void copyTo(int from, double[] target) {
+        System.arraycopy(values, from, target, 0, target.length);
+    }
+
+    // Getters
+    @Override
+    public int getCells() {
+        return values.length;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return (long) values.length * Double.BYTES;
+    }
+}
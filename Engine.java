@@ -0,0 +1,1086 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Engine class: This is the headless Q-learning engine. It keeps the Q-values and cell types of the whole map in
+ * flat primitive arrays indexed by row * cols + col, so training never has to touch a Swing component. Game and
+ * GridView only read from it to draw the map.
+ * <p>
+ * A cell is one byte of type code, rewards are looked up by type and the agent is kept as a separate index, so
+ * moving the agent never rewrites a cell. The holes are also kept as a bit plane (one bit per cell) for bulk
+ * queries like counting the holes of a range.
+ *
+ * @author Harshal
+ */
+public class Engine {
+
+    // Cell type codes
+    // start -> 0, finish -> 1, hole -> 2 and idle-> 3
+    public static final byte START = 0;
+    public static final byte FINISH = 1;
+    public static final byte HOLE = 2;
+    public static final byte IDLE = 3;
+
+    // Rows and cols of the map
+    private final int rows;
+    private final int cols;
+
+    // Reward of every cell type, indexed by the type code
+    private static final int[] REWARDS = {rewardOf(START), rewardOf(FINISH), rewardOf(HOLE), rewardOf(IDLE)};
+
+    // Q-table and the flat array holding the type of every cell
+    private final QTable qValues;
+    private final byte[] cellTypes;
+
+    // Bit plane of the holes, bit (index & 63) of word (index >>> 6) is set for a hole
+    private final long[] holes;
+
+    // Valid moves of every cell as a bit mask of actions and the index offset of every action
+    private final byte[] moves;
+    private final int[] offsets;
+
+    // Cached greedy policy: the action to the neighbour with the highest Q-value of every cell and, with a dense
+    // Q-table, that Q-value. Every Q-value write updates the cache of the neighbours, so policy lookups are a
+    // single array read. Compact Q-tables skip the Q-value cache to save its 8 bytes per cell and read the
+    // Q-value of the best move instead.
+    private final byte[] bestMoves;
+    private final double[] maxQValues;
+
+    // Snapshots and policies are split into chunks of 2^CHUNK_SHIFT cells. Every chunk remembers the version of
+    // the engine it was last changed in, and the engine moves on to the next version whenever a snapshot or a
+    // policy is taken, so the next one only copies the chunks changed since and shares the others.
+    static final int CHUNK_SHIFT = 12;
+    private final int[] chunkVersions;
+    private int version = 1;
+
+    // Actions of every possible move mask
+    private static final int[][] MOVE_ACTIONS = buildMoveActions();
+
+    // Position of every action in the order the neighbours are tried in, which decides ties
+    private static final int[] ACTION_ORDER = buildActionOrder();
+
+    // No neighbour has a Q-value above the floor
+    private static final byte NO_MOVE = Policy.NO_MOVE;
+    private static final double MAX_Q_VALUE_FLOOR = -1000;
+
+    // Index of the cell the agent is currently standing on, and of the cell it starts from
+    private int agent;
+    private int start;
+
+    // Index of the finish node, -1 while the map has none (the last one set if it has several)
+    private int finish = -1;
+
+    // Q-Learning
+    private final double alpha; // Learning rate
+    private final double gamma; // Discount rate
+
+    // Epsilon
+    private final double maxEpsilon;
+    private final double minEpsilon;
+    private final double decayRate;
+
+    // Number of episodes trained for every move of the agent
+    private final int episodes;
+
+    // Convergence: training stops when no Q-value changed more than the tolerance for patience sweeps in a row
+    private final double tolerance;
+    private final int patience;
+    private final int sweepEpisodes;
+
+    // Experience replay (null when it is turned off) and the reusable arrays of a replayed batch
+    private final ReplayBuffer replay;
+    private final int[] replaySlots;
+    private final long[] replayOrder;
+
+    // Episodes the last training call needed, all episodes trained so far, the last max Q-value change and the
+    // epsilon of the last episode
+    private int lastEpisodes;
+    private long totalEpisodes;
+    private volatile double lastMaxDelta;
+    private volatile double lastEpsilon;
+
+    // Random stream of the training on the engine's own thread
+    private final SplittableRandom random;
+
+    // Whether Q-learning can train the Q-table, see isLearnable
+    private final boolean learnable;
+
+    /**
+     * Engine constructor: every cell starts as an idle cell with a Q-value of 0. The map can be any size as long
+     * as the number of cells fits in an array.
+     *
+     * @param rows
+     * @param cols
+     * @param hyperparameters
+     * @param random
+     */
+    public Engine(int rows, int cols, Hyperparameters hyperparameters, SplittableRandom random) {
+        // Every cell needs an index in the flat arrays
+        if (rows < 1 || cols < 1 || (long) rows * cols > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cannot create a map of " + rows + "x" + cols + " cells");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.random = random;
+
+        alpha = hyperparameters.getAlpha();
+        gamma = hyperparameters.getGamma();
+        maxEpsilon = hyperparameters.getMaxEpsilon();
+        minEpsilon = hyperparameters.getMinEpsilon();
+        decayRate = hyperparameters.getDecayRate();
+        episodes = hyperparameters.getEpisodes();
+        tolerance = hyperparameters.getTolerance();
+        patience = hyperparameters.getPatience();
+        sweepEpisodes = hyperparameters.getSweepEpisodes();
+
+        if (hyperparameters.getReplayCapacity() > 0) {
+            int batchSize = Math.max(1, hyperparameters.getReplayBatchSize());
+            replay = new ReplayBuffer(hyperparameters.getReplayCapacity(), hyperparameters.isPrioritizedReplay());
+            replaySlots = new int[batchSize];
+            replayOrder = new long[batchSize];
+        } else {
+            replay = null;
+            replaySlots = null;
+            replayOrder = null;
+        }
+
+        qValues = QTable.create(hyperparameters.getQTableType(), rows * cols, hyperparameters.getQTableMemory(),
+                maxQValueBound(gamma));
+        qValues.setEvictionListener(this::evicted);
+        learnable = qValues.getStep() <= alpha * Math.abs(rewardOf(START))
+                * Math.min(Math.pow(gamma, rows + cols - 2), Math.pow(1 - alpha, episodes));
+        cellTypes = new byte[rows * cols];
+        chunkVersions = new int[((rows * cols - 1) >>> CHUNK_SHIFT) + 1];
+        holes = new long[(rows * cols + 63) >>> 6];
+        moves = new byte[rows * cols];
+        bestMoves = new byte[rows * cols];
+        maxQValues = hyperparameters.getQTableType() == QTableType.DENSE ? new double[rows * cols] : null;
+
+        // Moving up or down skips a whole row, moving left or right skips one cell
+        offsets = new int[4];
+        offsets[Action.UP.getIntEquivalent()] = -cols;
+        offsets[Action.DOWN.getIntEquivalent()] = cols;
+        offsets[Action.LEFT.getIntEquivalent()] = -1;
+        offsets[Action.RIGHT.getIntEquivalent()] = 1;
+        buildMoveTable();
+        rebuildPolicy();
+
+        // Every cell starts idle and the agent spawns on the first cell
+        Arrays.fill(cellTypes, IDLE);
+        moveAgent(0);
+    }
+
+    /**
+     * rewardOf method returns the reward of a cell type.
+     *
+     * @param type
+     * @return int
+     */
+    public static int rewardOf(byte type) {
+        switch (type) {
+            case START:
+                // Accessing start node back again costs -10 points
+                return -10;
+            case FINISH:
+                // Reaching Finish node gives 1000 points
+                return 1000;
+            case HOLE:
+                // Accessing hole node costs -1000 points
+                return -1000;
+            default:
+                // Accessing idle node costs 0 points
+                return 0;
+        }
+    }
+
+    /**
+     * index method converts a row and col into the index of the flat arrays.
+     *
+     * @param row
+     * @param col
+     * @return int
+     */
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    /**
+     * setCellType method changes the type of a cell.
+     *
+     * @param index
+     * @param type
+     */
+    public void setCellType(int index, byte type) {
+        cellTypes[index] = type;
+        touch(index);
+        if (type == FINISH) {
+            finish = index;
+        } else if (index == finish) {
+            finish = -1;
+        }
+        if (type == HOLE) {
+            holes[index >>> 6] |= 1L << index;
+        } else {
+            holes[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * moveAgent method moves the agent to another cell. The cells keep their own types, the agent only changes
+     * the reward of the cell it is standing on.
+     *
+     * @param index
+     */
+    public void moveAgent(int index) {
+        agent = index;
+    }
+
+    /**
+     * toggleHole method turns an idle cell into a hole or a hole back into an idle cell while the Q-table is kept.
+     * Replayed transitions still carry the old rewards, so the replay buffer is emptied. Run Planner.replan on the
+     * cell afterwards to re-learn only the part of the Q-table the change affects.
+     *
+     * @param index
+     * @return boolean - whether the cell is a hole now
+     */
+    public boolean toggleHole(int index) {
+        byte type = cellTypes[index];
+        if (type == FINISH) {
+            throw new IllegalArgumentException("the finish node can not be turned into a hole, move it first");
+        }
+        setCellType(index, type == HOLE ? IDLE : HOLE);
+        clearReplay();
+        return type != HOLE;
+    }
+
+    /**
+     * moveFinish method moves a finish node to another cell while the Q-table is kept. The cell it leaves becomes
+     * idle, a hole it moves onto is filled. Run Planner.replan on both cells afterwards.
+     *
+     * @param from
+     * @param to
+     */
+    public void moveFinish(int from, int to) {
+        if (cellTypes[from] != FINISH) {
+            throw new IllegalArgumentException("cell " + from + " is not a finish node");
+        }
+        setCellType(from, IDLE);
+        setCellType(to, FINISH);
+        clearReplay();
+    }
+
+    /**
+     * clearReplay method drops the replayed transitions after the map changed.
+     */
+    private void clearReplay() {
+        if (replay != null) {
+            replay.clear();
+        }
+    }
+
+    /**
+     * rewardAt method returns the reward of a cell: the start reward for the cell the agent is standing on and
+     * the reward of its type for every other cell.
+     *
+     * @param index
+     * @return int
+     */
+    public int rewardAt(int index) {
+        return index == agent ? REWARDS[START] : REWARDS[cellTypes[index]];
+    }
+
+    /**
+     * isHole method checks the hole bit plane for a cell.
+     *
+     * @param index
+     * @return boolean
+     */
+    public boolean isHole(int index) {
+        return (holes[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * countHoles method counts the holes of the whole map, 64 cells at a time.
+     *
+     * @return int
+     */
+    public int countHoles() {
+        return countHoles(0, cellTypes.length);
+    }
+
+    /**
+     * countHoles method counts the holes with an index from up to (but not including) to, 64 cells at a time. A
+     * whole row is the range index(row, 0) to index(row + 1, 0).
+     *
+     * @param from
+     * @param to
+     * @return int
+     */
+    public int countHoles(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        // Mask out the cells before from in the first word and from to on in the last word
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            return Long.bitCount(holes[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(holes[first] & firstMask);
+        for (int word = first + 1; word < last; word++) {
+            count += Long.bitCount(holes[word]);
+        }
+        return count + Long.bitCount(holes[last] & lastMask);
+    }
+
+    /**
+     * buildMoveTable method precomputes the valid moves of every cell once per map. Each cell gets a bit mask with
+     * one bit per Action (1 << intEquivalent), so the training loop never has to build action lists or vectors.
+     */
+    private void buildMoveTable() {
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int mask = 0;
+                // Is it possible to visit the Node above
+                if (row > 0) {
+                    mask |= 1 << Action.UP.getIntEquivalent();
+                }
+                // Is it possible to visit the Node below
+                if (row < rows - 1) {
+                    mask |= 1 << Action.DOWN.getIntEquivalent();
+                }
+                // Is it possible to visit the Node to the left
+                if (col > 0) {
+                    mask |= 1 << Action.LEFT.getIntEquivalent();
+                }
+                // Is it possible to visit the Node to the right
+                if (col < cols - 1) {
+                    mask |= 1 << Action.RIGHT.getIntEquivalent();
+                }
+                moves[index(row, col)] = (byte) mask;
+            }
+        }
+    }
+
+    /**
+     * buildMoveActions method builds the list of actions of every possible move mask. The actions are in the order
+     * up, left, down and right, which is the order the agent has always tried its neighbours in.
+     *
+     * @return int[][]
+     */
+    private static int[][] buildMoveActions() {
+        int[] order = {Action.UP.getIntEquivalent(), Action.LEFT.getIntEquivalent(),
+                Action.DOWN.getIntEquivalent(), Action.RIGHT.getIntEquivalent()};
+        int[][] moveActions = new int[16][];
+        for (int mask = 0; mask < 16; mask++) {
+            moveActions[mask] = new int[Integer.bitCount(mask)];
+            int count = 0;
+            for (int action : order) {
+                if ((mask & (1 << action)) != 0) {
+                    moveActions[mask][count++] = action;
+                }
+            }
+        }
+        return moveActions;
+    }
+
+    /**
+     * buildActionOrder method returns the position of every action in the order of buildMoveActions.
+     *
+     * @return int[]
+     */
+    private static int[] buildActionOrder() {
+        int[] order = MOVE_ACTIONS[15];
+        int[] actionOrder = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            actionOrder[order[i]] = i;
+        }
+        return actionOrder;
+    }
+
+    /**
+     * getAction method gets all the possible actions that the AI agent could make from a cell. The returned array
+     * is shared by every cell with the same moves, so it must not be modified.
+     *
+     * @param index
+     * @return int[] - integer equivalents of the possible actions
+     */
+    public int[] getAction(int index) {
+        return MOVE_ACTIONS[moves[index]];
+    }
+
+    /**
+     * getNeighbour method returns the cell the agent would end up in by taking the action. If the action would take
+     * the agent out of bounds, it stays where it is.
+     *
+     * @param index
+     * @param action
+     * @return int - index of the next position
+     */
+    public int getNeighbour(int index, int action) {
+        if ((moves[index] & (1 << action)) == 0) {
+            return index;
+        }
+        return index + offsets[action];
+    }
+
+    /**
+     * getMaxQValue method would return the neighbouring node's Q-Value which has the highest Q-Value. It is read
+     * from the cached greedy policy.
+     *
+     * @param index
+     * @return double
+     */
+    public double getMaxQValue(int index) {
+        if (maxQValues != null) {
+            return maxQValues[index];
+        }
+        byte bestMove = bestMoves[index];
+        return bestMove == NO_MOVE ? MAX_Q_VALUE_FLOOR : qValues.get(index + offsets[bestMove]);
+    }
+
+    /**
+     * computeMaxQValue method computes getMaxQValue from the Q-values of the neighbours, for when the cache
+     * cannot be trusted because other threads are training at the same time.
+     *
+     * @param index
+     * @return double
+     */
+    private double computeMaxQValue(int index) {
+        double maxQValue = MAX_Q_VALUE_FLOOR;
+        int[] actions = MOVE_ACTIONS[moves[index]];
+
+        // Get all the valid directions the agent can go to in its current position
+        for (int i = 0; i < actions.length; i++) {
+            double value = qValues.get(index + offsets[actions[i]]);
+
+            // Get the node with the highest Q-value
+            if (value > maxQValue) {
+                maxQValue = value;
+            }
+        }
+        return maxQValue; // Return that Q-value
+    }
+
+    /**
+     * computeMaxQIndex method computes getMaxQIndex from the Q-values of the neighbours, like computeMaxQValue.
+     *
+     * @param index
+     * @return int - neighbouring node with the highest Q-Value.
+     */
+    private int computeMaxQIndex(int index) {
+        double maxQValue = MAX_Q_VALUE_FLOOR;
+        int maxQIndex = 0;
+        int[] actions = MOVE_ACTIONS[moves[index]];
+        for (int i = 0; i < actions.length; i++) {
+            int neighbour = index + offsets[actions[i]];
+            double value = qValues.get(neighbour);
+            if (value > maxQValue) {
+                maxQValue = value;
+                maxQIndex = neighbour;
+            }
+        }
+        return maxQIndex;
+    }
+
+    /**
+     * getMaxQIndex method is the same as above, except here we are returning the index of the neighbouring node
+     * which has the highest Q-Value. If no neighbour is above -1000 it returns 0, like it always did.
+     *
+     * @param index
+     * @return int - neighbouring node with the highest Q-Value.
+     */
+    public int getMaxQIndex(int index) {
+        byte bestMove = bestMoves[index];
+        return bestMove == NO_MOVE ? 0 : index + offsets[bestMove];
+    }
+
+    /**
+     * rebuildPolicy method recomputes the cached greedy policy of every cell from the Q-table. It has to be
+     * called after Q-values were written without updating the cache, like after training on several threads.
+     */
+    public void rebuildPolicy() {
+        for (int i = 0; i < cellTypes.length; i++) {
+            computePolicy(i);
+        }
+    }
+
+    /**
+     * computePolicy method finds the neighbour with the highest Q-value of a cell. On a tie the first neighbour in
+     * the order up, left, down and right wins and only Q-values above -1000 count.
+     *
+     * @param index
+     */
+    private void computePolicy(int index) {
+        double maxQValue = MAX_Q_VALUE_FLOOR;
+        byte bestMove = NO_MOVE;
+        int[] actions = MOVE_ACTIONS[moves[index]];
+
+        for (int i = 0; i < actions.length; i++) {
+            double value = qValues.get(index + offsets[actions[i]]);
+            if (value > maxQValue) {
+                maxQValue = value;
+                bestMove = (byte) actions[i];
+            }
+        }
+        if (maxQValues != null) {
+            maxQValues[index] = maxQValue;
+        }
+        bestMoves[index] = bestMove;
+        touch(index);
+    }
+
+    /**
+     * touch method marks the chunk of a cell as changed in the current version. The version is only written when
+     * it differs, so threads training on the same cells do not keep writing the same cache line.
+     *
+     * @param index
+     */
+    private void touch(int index) {
+        int chunk = index >>> CHUNK_SHIFT;
+        if (chunkVersions[chunk] != version) {
+            chunkVersions[chunk] = version;
+        }
+    }
+
+    /**
+     * evicted method is told by the Q-table about a cell whose Q-value it dropped to stay within its memory. The
+     * Q-value reads 0 again, so the neighbours look at all their neighbours again.
+     *
+     * @param index
+     */
+    private void evicted(int index) {
+        touch(index);
+        int[] actions = MOVE_ACTIONS[moves[index]];
+        for (int i = 0; i < actions.length; i++) {
+            computePolicy(index + offsets[actions[i]]);
+        }
+    }
+
+    /**
+     * writeQValue method changes a Q-value and updates the cached greedy policy of its neighbours. Only a
+     * neighbour whose best move pointed here and whose Q-value went down has to look at all its neighbours again.
+     * The policy is updated with the value as the Q-table stores it, so it stays the greedy policy of what is read.
+     *
+     * @param index
+     * @param value
+     */
+    private void writeQValue(int index, double value) {
+        value = qValues.round(value);
+        double old = qValues.get(index);
+        qValues.set(index, value);
+        if (value == old) {
+            return;
+        }
+        touch(index);
+
+        int[] actions = MOVE_ACTIONS[moves[index]];
+        for (int i = 0; i < actions.length; i++) {
+            int neighbour = index + offsets[actions[i]];
+            // Up and down, and left and right, are each other's opposite
+            int back = actions[i] ^ 1;
+            byte bestMove = bestMoves[neighbour];
+
+            if (bestMove == back) {
+                // A higher Q-value keeps the best move, a lower one might not
+                if (value < old) {
+                    computePolicy(neighbour);
+                } else if (maxQValues != null) {
+                    maxQValues[neighbour] = value;
+                }
+            } else {
+                double maxQValue = getMaxQValue(neighbour);
+                if (value > maxQValue || (value == maxQValue && bestMove != NO_MOVE
+                        && ACTION_ORDER[back] < ACTION_ORDER[bestMove])) {
+                    bestMoves[neighbour] = (byte) back;
+                    touch(neighbour);
+                    if (maxQValues != null) {
+                        maxQValues[neighbour] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * calculateEpsilon method helps us decide if the agent should keep exploring or whether the agent should exploit
+     * what it has learnt. This epsilon value slowly keeps decreasing as our number of episodes increase.
+     * <p>
+     * Formula taken from: https://www.datacamp.com/tutorial/introduction-q-learning-beginner-tutorial
+     *
+     * @param episode
+     * @return double
+     */
+    public double calculateEpsilon(int episode) {
+        return this.minEpsilon + (this.maxEpsilon - this.minEpsilon) * Math.exp(-this.decayRate * episode);
+    }
+
+    /**
+     * decideAction method would use the epsilon value to either make the agent explore the environment in the
+     * given direction, or make it follow the neighbour with the highest Q-value.
+     *
+     * @param index
+     * @param actionDirection
+     * @param epsilon
+     * @param random
+     * @param shared
+     * @return int - index of the next position
+     */
+    private int decideAction(int index, int actionDirection, double epsilon, SplittableRandom random, boolean shared) {
+        // Get random double between [0,1]
+        double randomInt = random.nextDouble(1);
+        if (randomInt > epsilon) {
+            // Get the max QValue Index from the current node's neighbours. The cache is stale while other threads
+            // are training on the same Q-table, so then we look at the neighbours themselves without writing the
+            // cache, which all threads would be writing to at the same time.
+            return shared ? computeMaxQIndex(index) : getMaxQIndex(index);
+        }
+        // Move in the given direction
+        return getNeighbour(index, actionDirection);
+    }
+
+    /**
+     * qLearningAlgorithm method: We are training our agent 10000 times (by default) starting from the current
+     * position, updating the Q-value of every node we step on with Bellman's equation. Training stops early once
+     * the Q-table has converged. Afterwards we return the neighbouring node with the highest Q-value as the next
+     * position to head to.
+     *
+     * @param currentPos
+     * @return int - index of the next position to head to
+     */
+    public int qLearningAlgorithm(int currentPos) {
+        // Everytime this method is called, train until all the episodes are done or the Q-table converged
+        lastEpisodes = train(currentPos, 0, episodes, 1, random, false);
+        totalEpisodes += lastEpisodes;
+
+        // Head to the neighbouring node with the highest Q-value
+        return getMaxQIndex(currentPos);
+    }
+
+    /**
+     * train method runs the episodes first, first + stride, first + 2 * stride, ... below end starting from the
+     * current position. Each episode tries every possible action of the current position once and updates the
+     * Q-value of every node it steps on with Bellman's equation.
+     * <p>
+     * The episodes are grouped in sweeps of sweepEpisodes episodes. When the largest change of a Q-value during a
+     * sweep stays below the tolerance for patience sweeps in a row, the Q-table has converged and we stop.
+     * <p>
+     * This loop does not allocate anything, every lookup goes through the precomputed move table. When shared is
+     * true other threads are training on the same Q-table at the same time (Hogwild style), so every update is
+     * written with a compare-and-set instead of a plain store and no update is lost. The cached greedy policy is
+     * not updated then, rebuildPolicy has to be called once all threads are done.
+     * <p>
+     * With experience replay turned on every transition is also recorded, and after every episode a batch of
+     * recorded transitions is replayed. Replay is only used when training on one thread.
+     *
+     * @param currentPos
+     * @param first
+     * @param end
+     * @param stride
+     * @param random
+     * @param shared
+     * @return int - number of episodes run
+     */
+    int train(int currentPos, int first, int end, int stride, SplittableRandom random, boolean shared) {
+        if (!learnable) {
+            throw new IllegalStateException("A Q-table with steps of " + qValues.getStep() + " cannot be learnt on a "
+                    + rows + "x" + cols + " map with alpha " + alpha + " and gamma " + gamma);
+        }
+        // The actions of the current position are tried in every episode
+        int[] possibleActions = MOVE_ACTIONS[moves[currentPos]];
+        int run = 0;
+
+        // Largest Q-value change of the current sweep, and the number of quiet sweeps in a row
+        double sweepDelta = 0;
+        int sweepEpisode = 0;
+        int quietSweeps = 0;
+
+        for (int episodes = first; episodes < end; episodes += stride) {
+            // The epsilon value only depends on the episode
+            double epsilon = calculateEpsilon(episodes);
+            int current = currentPos;
+            // We go through each of the possible actions
+            for (int i = 0; i < possibleActions.length; i++) {
+                // We get the next position by checking the epsilon value
+                int next = decideAction(current, possibleActions[i], epsilon, random, shared);
+
+                double delta;
+                if (shared) {
+                    delta = updateShared(next, random);
+                } else {
+                    // Bellman's equation to calculate Q-value, rounded the way the Q-table stores it
+                    double nextQValue = qValues.get(next);
+                    double value = qValues.round(
+                            nextQValue + alpha * (rewardAt(next) + gamma * getMaxQValue(next) - nextQValue), random);
+                    writeQValue(next, value);
+                    delta = Math.abs(value - nextQValue);
+
+                    // Remember the transition, with its TD-error for prioritized replay
+                    if (replay != null) {
+                        replay.add(current, possibleActions[i], rewardAt(next), next, (value - nextQValue) / alpha);
+                    }
+                }
+                sweepDelta = Math.max(sweepDelta, delta);
+
+                //currentPosition is set to the nextPosition
+                current = next;
+            }
+            if (replay != null && !shared) {
+                sweepDelta = Math.max(sweepDelta, replayBatch(random));
+            }
+            run++;
+
+            // At the end of every sweep check whether the Q-table stopped changing
+            if (++sweepEpisode == sweepEpisodes) {
+                lastMaxDelta = sweepDelta;
+                quietSweeps = sweepDelta < tolerance ? quietSweeps + 1 : 0;
+                if (quietSweeps >= patience) {
+                    break;
+                }
+                sweepDelta = 0;
+                sweepEpisode = 0;
+            }
+        }
+        if (run > 0) {
+            lastEpsilon = calculateEpsilon(first + (run - 1) * stride);
+        }
+        return run;
+    }
+
+    /**
+     * replayBatch method samples a batch of recorded transitions and applies Bellman's equation to each of them
+     * again with the current Q-values. The batch is sorted by the cell it updates first, so the updates walk
+     * through the Q-table in memory order.
+     *
+     * @param random
+     * @return double - largest change of a Q-value
+     */
+    private double replayBatch(SplittableRandom random) {
+        int count = Math.min(replaySlots.length, replay.getSize());
+        replay.sample(replaySlots, count, random);
+
+        // Sort by the updated cell, keeping the slot in the low 32 bits
+        for (int i = 0; i < count; i++) {
+            int slot = replaySlots[i];
+            replayOrder[i] = (long) replay.getNextState(slot) << 32 | slot;
+        }
+        Arrays.sort(replayOrder, 0, count);
+
+        double maxDelta = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) replayOrder[i];
+            int next = (int) (replayOrder[i] >>> 32);
+            double nextQValue = qValues.get(next);
+            double error = replay.getReward(slot) + gamma * getMaxQValue(next) - nextQValue;
+            writeQValue(next, qValues.round(nextQValue + alpha * error, random));
+            maxDelta = Math.max(maxDelta, Math.abs(alpha * error));
+            replay.setPriority(slot, error);
+        }
+        return maxDelta;
+    }
+
+    /**
+     * updateShared method applies Bellman's equation to a node of a Q-table that other threads are updating as
+     * well. If another thread changed the Q-value in the meantime we recalculate it from the new value.
+     *
+     * @param next
+     * @param random
+     * @return double - how much the Q-value changed
+     */
+    private double updateShared(int next, SplittableRandom random) {
+        double nextQValue;
+        double value;
+        do {
+            nextQValue = qValues.get(next);
+            value = qValues.round(nextQValue + alpha * (rewardAt(next) + gamma * computeMaxQValue(next) - nextQValue),
+                    random);
+        } while (!qValues.compareAndSet(next, nextQValue, value));
+        touch(next);
+        return Math.abs(value - nextQValue);
+    }
+
+    /**
+     * isLearnable method tells whether Q-learning can train the Q-table. An update moves a Q-value by alpha times
+     * its TD error, and a table whose step is larger than alpha times the smallest TD error that still matters
+     * rounds those updates away. That error is the penalty of the start node, either seen from the other end of
+     * the map (discounted by gamma^(rows + cols - 2)) or left on a cell the agent walked off, which the training
+     * of a move wears down by (1 - alpha) with every update of the cell (at least (1 - alpha)^episodes). The agent
+     * moves on from the cells it just visited only because their Q-values stay below 0, so with the default 10000
+     * episodes no fixed-point step is small enough, and an int16 table (see FixedQTable) can only be planned.
+     *
+     * @return boolean
+     */
+    public boolean isLearnable() {
+        return learnable;
+    }
+
+    /**
+     * bellmanValue method returns the value Bellman's equation gives a cell for the current Q-values of its
+     * neighbours, rounded the way the Q-table stores it. The Q-table has converged when every cell has its Bellman
+     * value.
+     *
+     * @param index
+     * @return double
+     */
+    public double bellmanValue(int index) {
+        return qValues.round(rewardAt(index) + gamma * getMaxQValue(index));
+    }
+
+    /**
+     * maxQValueBound method returns how far from 0 a Q-value can get: at most the largest reward in every step,
+     * discounted by gamma, which adds up to the largest reward divided by (1 - gamma).
+     *
+     * @param gamma
+     * @return double - infinite when gamma is 1 or more
+     */
+    static double maxQValueBound(double gamma) {
+        int maxReward = 0;
+        for (int reward : REWARDS) {
+            maxReward = Math.max(maxReward, Math.abs(reward));
+        }
+        return gamma < 1 ? maxReward / (1 - gamma) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * greedyPathLength method follows the neighbours with the highest Q-value from the start position and returns
+     * the number of moves it takes to reach the finish node, or -1 if the finish node is not reached within
+     * rows * cols moves.
+     *
+     * @param start
+     * @return int
+     */
+    public int greedyPathLength(int start) {
+        int current = start;
+        for (int moves = 1; moves <= cellTypes.length; moves++) {
+            current = getMaxQIndex(current);
+            if (cellTypes[current] == FINISH) {
+                return moves;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * greedyReturn method follows the same path as greedyPathLength and returns the sum of the rewards collected
+     * on the way, stopping at the finish node.
+     *
+     * @param start
+     * @return long
+     */
+    public long greedyReturn(int start) {
+        long total = 0;
+        int current = start;
+        for (int moves = 1; moves <= cellTypes.length; moves++) {
+            current = getMaxQIndex(current);
+            total += rewardOf(cellTypes[current]);
+            if (cellTypes[current] == FINISH) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * snapshot method copies the map, the Q-table and the agent's position into an immutable snapshot.
+     *
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * snapshot method takes a new snapshot that shares every chunk that did not change since the previous
+     * snapshot of this engine, so only the changed chunks are copied.
+     *
+     * @param previous - an earlier snapshot of this engine, or null to copy everything
+     * @return Snapshot
+     */
+    public Snapshot snapshot(Snapshot previous) {
+        boolean shared = previous != null && previous.getVersion() > 0 && previous.getRows() == rows
+                && previous.getCols() == cols;
+        boolean sparse = qValues.isSparse();
+        shared &= previous != null && previous.isSparse() == sparse;
+        byte[][] typeChunks = new byte[chunkVersions.length][];
+        double[][] qValueChunks = new double[chunkVersions.length][];
+        short[][] qOffsetChunks = sparse ? new short[chunkVersions.length][] : null;
+        short[] offsets = sparse ? new short[1 << CHUNK_SHIFT] : null;
+        double[] values = sparse ? new double[1 << CHUNK_SHIFT] : null;
+        for (int chunk = 0; chunk < chunkVersions.length; chunk++) {
+            if (shared && chunkVersions[chunk] <= previous.getVersion()) {
+                typeChunks[chunk] = previous.getCellTypeChunk(chunk);
+                qValueChunks[chunk] = previous.getQValueChunk(chunk);
+                if (sparse) {
+                    qOffsetChunks[chunk] = previous.getQOffsetChunk(chunk);
+                }
+                continue;
+            }
+            int from = chunk << CHUNK_SHIFT;
+            int to = Math.min(from + (1 << CHUNK_SHIFT), cellTypes.length);
+            typeChunks[chunk] = Arrays.copyOfRange(cellTypes, from, to);
+            int stored = sparse ? qValues.copyStoredTo(from, to - from, offsets, values) : 0;
+            // An offset and a double per stored cell only pays off while they take less room than the dense chunk
+            if (sparse && stored * (Short.BYTES + Double.BYTES) < (to - from) * Double.BYTES) {
+                qOffsetChunks[chunk] = Arrays.copyOf(offsets, stored);
+                qValueChunks[chunk] = Arrays.copyOf(values, stored);
+            } else {
+                qValueChunks[chunk] = new double[to - from];
+                qValues.copyTo(from, qValueChunks[chunk]);
+            }
+        }
+        return new Snapshot(rows, cols, typeChunks, qValueChunks, qOffsetChunks, agent, start, totalEpisodes,
+                version++);
+    }
+
+    /**
+     * policy method copies the cached greedy policy and the map into an immutable policy.
+     *
+     * @return Policy
+     */
+    public Policy policy() {
+        return policy(null);
+    }
+
+    /**
+     * policy method takes a new policy that shares every chunk that did not change since the previous policy of
+     * this engine, so only the changed chunks are copied.
+     *
+     * @param previous - an earlier policy of this engine, or null to copy everything
+     * @return Policy
+     */
+    public Policy policy(Policy previous) {
+        boolean shared = previous != null && previous.getRows() == rows && previous.getCols() == cols;
+        byte[][] moveChunks = new byte[chunkVersions.length][];
+        byte[][] typeChunks = new byte[chunkVersions.length][];
+        for (int chunk = 0; chunk < chunkVersions.length; chunk++) {
+            if (shared && chunkVersions[chunk] <= previous.getVersion()) {
+                moveChunks[chunk] = previous.getBestMoveChunk(chunk);
+                typeChunks[chunk] = previous.getCellTypeChunk(chunk);
+            } else {
+                int from = chunk << CHUNK_SHIFT;
+                int to = Math.min(from + (1 << CHUNK_SHIFT), cellTypes.length);
+                moveChunks[chunk] = Arrays.copyOfRange(bestMoves, from, to);
+                typeChunks[chunk] = Arrays.copyOfRange(cellTypes, from, to);
+            }
+        }
+        return new Policy(rows, cols, moveChunks, typeChunks, totalEpisodes, version++);
+    }
+
+    /**
+     * restore method puts the map, the Q-table, the agent's position, the start and the episode counter of a
+     * snapshot (for example one loaded from a checkpoint) back into the engine. The snapshot must have the same size.
+     *
+     * @param snapshot
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.getRows() != rows || snapshot.getCols() != cols) {
+            throw new IllegalArgumentException("Cannot restore a " + snapshot.getRows() + "x" + snapshot.getCols()
+                    + " snapshot into a " + rows + "x" + cols + " engine");
+        }
+        for (int i = 0; i < cellTypes.length; i++) {
+            setCellType(i, snapshot.getCellType(i));
+            qValues.set(i, snapshot.getQValue(i));
+        }
+        rebuildPolicy();
+        start = snapshot.getStart();
+        moveAgent(snapshot.getAgent());
+        totalEpisodes = snapshot.getEpisodes();
+    }
+
+    // Getters and Setters
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    public int getCellCount() {
+        return cellTypes.length;
+    }
+
+    public QTable getQTable() {
+        return qValues;
+    }
+
+    public int getLastEpisodes() {
+        return lastEpisodes;
+    }
+
+    public long getTotalEpisodes() {
+        return totalEpisodes;
+    }
+
+    public double getLastMaxDelta() {
+        return lastMaxDelta;
+    }
+
+    public double getLastEpsilon() {
+        return lastEpsilon;
+    }
+
+    public int getAgent() {
+        return agent;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getFinish() {
+        return finish;
+    }
+
+    /**
+     * setStart method changes the cell the agent starts from and moves the agent there.
+     *
+     * @param start
+     */
+    public void setStart(int start) {
+        this.start = start;
+        moveAgent(start);
+    }
+
+    public double getQValue(int row, int col) {
+        return qValues.get(index(row, col));
+    }
+
+    public void setQValue(int row, int col, double qValue) {
+        writeQValue(index(row, col), qValue);
+    }
+
+    public double getQValue(int index) {
+        return qValues.get(index);
+    }
+
+    public void setQValue(int index, double qValue) {
+        writeQValue(index, qValue);
+    }
+
+    public int getReward(int row, int col) {
+        return rewardAt(index(row, col));
+    }
+
+    public byte getCellType(int row, int col) {
+        return cellTypes[index(row, col)];
+    }
+
+    public byte getCellType(int index) {
+        return cellTypes[index];
+    }
+
+    public byte getBestMove(int index) {
+        return bestMoves[index];
+    }
+
+    public void setCellType(int row, int col, byte type) {
+        setCellType(index(row, col), type);
+    }
+}
@@ -0,0 +1,123 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+
+/**
+ * FixedQTable class: A Q-table keeping the Q-value of every cell as a 16 bit fixed-point number, a quarter of the
+ * size of a dense table. The scale comes from the reward range: no Q-value can get further from 0 than the largest
+ * reward divided by (1 - gamma), so that bound is mapped to the largest short and the Q-values are stored in
+ * steps of bound / 32767.
+ * <p>
+ * The step is about 0.1 for a gamma of 0.7 and 0.3 for 0.9. A Q-learning update only moves a Q-value by alpha
+ * times its TD error, so rounded to the nearest step every update with a TD error below step / (2 * alpha) would
+ * be lost and the training would stop far from the finish node while it looks converged. Learning updates are
+ * therefore rounded stochastically, up or down with the chance of the nearer step, so they keep their effect on
+ * average. That still does not keep values smaller than a step apart from 0, and Q-learning moves the agent on
+ * from the cells it just visited by such values, so the engine refuses to learn a table whose step is larger than
+ * alpha times the smallest TD error that matters (see Engine.isLearnable). With the default hyperparameters that
+ * is every int16 table: it is meant for planned Q-tables.
+ * <p>
+ * Planned values are rounded to the nearest step, and Q-values closer than a step still read the same: a planned
+ * policy is only kept up to about log(step / 1000) / log(gamma) cells from the finish node (around 26 cells for a
+ * gamma of 0.7, 88 for 0.9) and falls back to the tie order further away. compareAndSet is atomic, so any number
+ * of threads can train on it.
+ *
+ * @author Harshal
+ */
+public class FixedQTable implements QTable {
+
+    // Atomic access to the Q-values for training on several threads
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(short[].class);
+
+    // Q-value of every cell in steps
+    private final short[] values;
+
+    // Size of a step and steps per unit
+    private final double step;
+    private final double scale;
+
+    /**
+     * FixedQTable constructor
+     *
+     * @param cells
+     * @param bound - largest absolute Q-value
+     */
+    public FixedQTable(int cells, double bound) {
+        if (!(bound > 0) || Double.isInfinite(bound)) {
+            throw new IllegalArgumentException("a fixed-point Q-table needs a finite bound but got " + bound);
+        }
+        values = new short[cells];
+        step = bound / Short.MAX_VALUE;
+        scale = Short.MAX_VALUE / bound;
+    }
+
+    /**
+     * encode method returns the nearest step of a Q-value, clamped to the range of a short.
+     *
+     * @param value
+     * @return short
+     */
+    private short encode(double value) {
+        long steps = Math.round(value * scale);
+        return (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, steps));
+    }
+
+    /**
+     * encodeStochastic method returns one of the two steps around a Q-value, the upper one with a chance of how far
+     * the value is above the lower one, clamped to the range of a short.
+     *
+     * @param value
+     * @param random
+     * @return short
+     */
+    private short encodeStochastic(double value, SplittableRandom random) {
+        long steps = (long) Math.floor(value * scale + random.nextDouble());
+        return (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, steps));
+    }
+
+    @Override
+    public double get(int index) {
+        return values[index] * step;
+    }
+
+    @Override
+    public void set(int index, double value) {
+        values[index] = encode(value);
+    }
+
+    @Override
+    public boolean compareAndSet(int index, double expected, double value) {
+        return VALUES.compareAndSet(values, index, encode(expected), encode(value));
+    }
+
+    @Override
+    public double round(double value) {
+        return encode(value) * step;
+    }
+
+    @Override
+    public double round(double value, SplittableRandom random) {
+        return encodeStochastic(value, random) * step;
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    // Getters
+    @Override
+    public int getCells() {
+        return values.length;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return (long) values.length * Short.BYTES;
+    }
+
+    @Override
+    public double getStep() {
+        return step;
+    }
+}
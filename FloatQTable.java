@@ -0,0 +1,63 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * FloatQTable class: A Q-table keeping the Q-value of every cell as a 32 bit float, half the size of a dense table.
+ * A float keeps about 7 significant digits, far more than the rewards need, so the greedy policy only changes
+ * where two neighbours were closer than that. compareAndSet is atomic, so any number of threads can train on it.
+ *
+ * @author Harshal
+ */
+public class FloatQTable implements QTable {
+
+    // Atomic access to the Q-values for training on several threads
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(float[].class);
+
+    // Q-value of every cell
+    private final float[] values;
+
+    /**
+     * FloatQTable constructor
+     *
+     * @param cells
+     */
+    public FloatQTable(int cells) {
+        values = new float[cells];
+    }
+
+    @Override
+    public double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void set(int index, double value) {
+        values[index] = (float) value;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, double expected, double value) {
+        return VALUES.compareAndSet(values, index, (float) expected, (float) value);
+    }
+
+    @Override
+    public double round(double value) {
+        return (float) value;
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    // Getters
+    @Override
+    public int getCells() {
+        return values.length;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return (long) values.length * Float.BYTES;
+    }
+}
@@ -1,7 +1,10 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Game class
@@ -11,46 +14,84 @@ import java.util.Random;
 public class Game extends JPanel implements Runnable {
 
     // Rows and cols variable
-    public static int rows;
-    public static int cols;
+    private int rows;
+    private int cols;
 
-    // Size of the cell
-    public static int cellSize = 100;
+    // Size of the cell in pixels, and the largest size of a cell and of the game screen
+    private double cellSize;
+    private static final int MAX_CELL_SIZE = 100;
+    private static final int MAX_SCREEN_SIZE = 800;
 
     // Width and height of the game screen
-    public static int width;
-    public static int height;
+    private int width;
+    private int height;
 
-    // Node
-    public static Node[][] node;
+    // Component drawing the map
+    private GridView gridView;
 
-    // Q-Learning
-    private final double alpha = 0.2; // Learning rate
-    private final double gamma = 0.7; // Discount rate
+    // Learning settings of this game
+    private final Hyperparameters hyperparameters;
+
+    // Engine holding the Q-table and the map, the grid view above only draws it
+    private Engine engine;
 
     // Keep track of current position
     private Vector currentPos;
 
-    // Epsilon
-    private double maxEpsilon = 1.0;
-    private double minEpsilon = 0.05;
-    private double decayRate = 0.0005;
-
-    // Random
-    private Random random;
+    // Seed of the map and the training, the same seed always gives the same run
+    private final long seed;
 
     // Thread
     private Thread thread;
-    private boolean executing;
+    private volatile boolean executing;
+
+    // The training thread publishes a snapshot at most once per frame and the UI thread draws it
+    private static final int FRAMES_PER_SECOND = 30;
+    private static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+    private volatile Snapshot published;
+    private long lastPublished;
+
+    // Timer drawing the snapshots
+    private Timer renderer;
+
+    // Checkpoint of the Q-table, written periodically while training
+    private Checkpoint checkpoint;
+
+    // Server answering policy queries, it gets a new policy with every published snapshot
+    private PolicyServer policyServer;
+    private Policy publishedPolicy;
+
+    // Map edits waiting for the training thread, and the planner re-learning the part of the Q-table they affect
+    private final ConcurrentLinkedQueue<Runnable> edits = new ConcurrentLinkedQueue<>();
+    private Planner replanner;
+
+    // Training metrics, shown over JMX as qlearning:type=TrainingMetrics,name="game"
+    private final TrainingMetrics metrics = TrainingMetrics.register("game");
+
+    /**
+     * Game constructor with the default learning settings
+     *
+     * @param rows
+     * @param cols
+     */
+    public Game(int rows, int cols) {
+        this(rows, cols, new Hyperparameters(), new SplittableRandom().nextLong());
+    }
 
     /**
      * Game constructor
      *
-     * @param gridSize
+     * @param rows
+     * @param cols
+     * @param hyperparameters
+     * @param seed
      */
-    public Game(int gridSize) {
+    public Game(int rows, int cols, Hyperparameters hyperparameters, long seed) {
+        this.hyperparameters = hyperparameters;
+        this.seed = seed;
+
         // Calling the initialize method below
-        initialize(gridSize);
+        initialize(rows, cols);
 
         // Set the size of the screen
         this.setPreferredSize(new Dimension(width, height));
@@ -58,395 +99,246 @@ public class Game extends JPanel implements Runnable {
         // Make the background of the screen black
         this.setBackground(Color.BLACK);
 
-        // Set the layout of the screen to grid with specific number of rows and cols.
-        this.setLayout(new GridLayout(rows, cols));
+        // The grid view fills the whole screen
+        this.setLayout(new BorderLayout());
+        this.add(gridView, BorderLayout.CENTER);
 
         // Take the control of the game as soon as the screen spawns
         this.setFocusable(true);
+
+        // Draw the latest published snapshot at a fixed frame rate on the UI thread
+        renderer = new Timer(1000 / FRAMES_PER_SECOND, e -> render());
     }
 
     /**
      * initialize method initializes the game objects
      *
-     * @param gridSize
+     * @param rows
+     * @param cols
      */
-    public void initialize(int gridSize) {
-        //Based on the user input gridSize, we will change out number of rows and columns.
-        rows = gridSize;
-        cols = gridSize;
+    public void initialize(int rows, int cols) {
+        //Based on the user input, we will change out number of rows and columns.
+        this.rows = rows;
+        this.cols = cols;
 
-        // We will also change the width and height of the game screen.
-        width = cellSize * cols;
-        height = cellSize * rows;
+        // Cells get smaller on large maps so the game screen still fits on the computer screen
+        cellSize = Math.min(MAX_CELL_SIZE, (double) MAX_SCREEN_SIZE / Math.max(rows, cols));
 
-        // We would also create our main Node array
-        node = new Node[rows][cols];
+        // We will also change the width and height of the game screen.
+        width = (int) Math.ceil(cellSize * cols);
+        height = (int) Math.ceil(cellSize * rows);
 
-        // Initialize random
-        random = new Random();
+        // The map and the training each get their own stream of the seed
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom mapRandom = random.split();
 
-        // Add cell nodes to the game
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                node[i][j] = new Node(i, j);
-                node[i][j].setIdle(true);
-                this.add(node[i][j]);
-            }
-        }
+        // Create the engine which trains the agent on this map and generate the map
+        engine = new Engine(rows, cols, hyperparameters, random.split());
+        MapGenerator.generate(engine, mapRandom);
 
         // CurrentPosition of the agent is set to 0, 0
         currentPos = new Vector(0, 0);
 
-        // Hard-code start position and finish position as these are supposed to be fixed.
-        node[0][0].setPrevious(3); // Set its previous state to idle
-        node[0][0].setStart(true);
-        node[rows - 1][cols - 1].setFinish(true);
-
-
-        // We would put holes in our map in random positions. We make sure that the holes don't spawn
-        // right next to the start node or finish node or completely surround them.
-        int min = 1;
-        int max;
-        if(gridSize == 4){
-            max = gridSize - 1;
-        } else{
-            max = gridSize - 2;
-        }
-        int count = 0;
-
-        // Here we keep the count of the holes as the half the number of row or column plus 1.
-        while (count < (gridSize / 2) + 1) {
-            // Randomly place the holes
-            int randomRow = random.nextInt(max - min) + min;
-            int randomCol = random.nextInt(max - min) + min;
-            if (!node[randomRow][randomCol].isStart() && !node[randomRow][randomCol].isFinish() && !node[randomRow][randomCol].isHole()) {
-                node[randomRow][randomCol].setHole(true);
-                count++; // Increment the count when the holes are placed in valid positions.
+        // The grid view draws the published snapshots of the engine
+        published = engine.snapshot();
+        gridView = new GridView(published, cellSize);
+
+        // Clicking a cell toggles a hole, shift-clicking moves the finish node there
+        replanner = new Planner(engine, Solver.PRIORITIZED_SWEEPING, 1);
+        gridView.setCellListener((row, col, shift) -> {
+            if (shift) {
+                moveFinish(row, col);
+            } else {
+                toggleHole(row, col);
             }
-        }
-
-    }
-
-    /**
-     * start method: This synchronized method starts a new thread. This game runs on a single thread. We set
-     * our boolean variable executing to true for our game loop.
-     */
-    public synchronized void start() {
-        try {
-            thread = new Thread(this);
-            thread.start();
-            executing = true;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        });
     }
 
     /**
-     * stop method: This synchronized method stops the executing thread. This method is
-     * called at the end of the game loop to safely stop the execution of the thread.
+     * toggleHole method turns a cell into a hole or a hole back into an idle cell. The training thread makes the
+     * change before its next move and re-learns only the Q-values the change moves by more than the tolerance of
+     * the hyperparameters. Any thread can call it.
+     *
+     * @param row
+     * @param col
      */
-    public synchronized void stop() {
-        try {
-            thread.join();
-            executing = false;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    public void toggleHole(int row, int col) {
+        edits.add(() -> {
+            int index = engine.index(row, col);
+            if (engine.getCellType(row, col) != Engine.FINISH) {
+                engine.toggleHole(index);
+                replanner.replan(hyperparameters.getTolerance(), index);
+            }
+        });
     }
 
     /**
-     * processInput method: This method makes the thread sleep to ensure smooth running of the game.
-     * It introduces lag which makes the simulation viewable for human eyes.
+     * moveFinish method moves the finish node to a cell. The training thread makes the change before its next
+     * move and re-learns only the Q-values the change moves by more than the tolerance of the hyperparameters. Any
+     * thread can call it.
+     *
+     * @param row
+     * @param col
      */
-    private void processInput() {
-        try {
-            int lag = 20;
-            Thread.sleep(lag);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public void moveFinish(int row, int col) {
+        edits.add(() -> {
+            int from = engine.getFinish();
+            int to = engine.index(row, col);
+            if (from >= 0 && from != to) {
+                engine.moveFinish(from, to);
+                replanner.replan(hyperparameters.getTolerance(), from, to);
+            }
+        });
     }
 
     /**
-     * changeAgentPos method: This method would change the position of the agent AI. In this game, we want
-     * the AI to move towards the finish node.
+     * setCheckpoint method continues the training from the checkpoint file if there is one for a map of the same
+     * size, and saves the published snapshots to it every period milliseconds from then on.
      *
-     * @param nextPos
+     * @param path
+     * @param periodMillis
      */
-    public void changeAgentPos(Vector nextPos) {
-        // First we iterate through the entire node array
-        for (int i = 0; i < node.length; i++) {
-            for (int j = 0; j < node[i].length; j++) {
-                // And whenever we find a start node we set it to false
-                if (node[i][j].isStart()) {
-                    node[i][j].setStart(false);
-                    // Then we set the previous state of that node to idle, finish or hole (whatever it was)
-                    if (node[i][j].getPrevious() == 0) {
-                        // Start
-                        node[i][j].setIdle(true);
-                        node[i][j].setPrevious(3); // Set previous to idle
-                    }
-                    if (node[i][j].getPrevious() == 1) {
-                        // Finish
-                        node[i][j].setFinish(true);
-                        node[i][j].setPrevious(1); // Set previous to finish
-                    }
-                    if (node[i][j].getPrevious() == 2) {
-                        // Hole
-                        node[i][j].setHole(true);
-                        node[i][j].setPrevious(2); // Set previous to hole
-                    }
-                    if (node[i][j].getPrevious() == 3) {
-                        // Idle
-                        node[i][j].setIdle(true);
-                        node[i][j].setPrevious(3); // Set previous to idle
-                    }
+    public void setCheckpoint(Path path, long periodMillis) {
+        if (Files.exists(path)) {
+            try {
+                Snapshot saved = Checkpoint.read(path);
+                if (saved.getRows() == rows && saved.getCols() == cols) {
+                    engine.restore(saved);
+                    currentPos.setRow(saved.getAgent() / cols);
+                    currentPos.setCol(saved.getAgent() % cols);
+                    published = engine.snapshot();
+                    gridView.setSnapshot(published);
+                } else {
+                    System.err.println("Ignoring checkpoint " + path + " of a " + saved.getRows() + "x"
+                            + saved.getCols() + " map");
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
-        // Then we set the nextPosition of the start to true
-        node[nextPos.getRow()][nextPos.getCol()].setStart(true);
+        checkpoint = new Checkpoint(path, () -> published);
+        checkpoint.start(periodMillis);
     }
 
     /**
-     * getAction method gets all the possible actions that the AI agent could make. We will be returning
-     * Action ArrayList which would store all the directions that this agent can take from its current
-     * position.
+     * setPolicyServer method starts a policy server on the port of localhost, answering with the policy of the
+     * latest published snapshot.
      *
-     * @param currentPos
-     * @return Action ArrayList
+     * @param port
+     * @throws IOException
      */
-    public ArrayList<Action> getAction(Vector currentPos) {
-        // Get the row and col
-        int row = currentPos.getRow();
-        int col = currentPos.getCol();
-
-        ArrayList<Action> possibleActions = new ArrayList<>();
-        // Is it possible to visit the Node above
-        if (row > 0) {
-            possibleActions.add(Action.UP);
-        }
-        if (col > 0) {
-            // Is it possible to visit the Node to the left
-            possibleActions.add(Action.LEFT);
-        }
-        if (row < rows - 1) {
-            // Is it possible to visit the Node below
-            possibleActions.add(Action.DOWN);
-        }
-        if (col < cols - 1) {
-            // Is it possible to visit the Node to the right
-            possibleActions.add(Action.RIGHT);
-        }
-        return possibleActions;
+    public void setPolicyServer(int port) throws IOException {
+        publishedPolicy = engine.policy();
+        policyServer = new PolicyServer(port, publishedPolicy);
+        policyServer.start();
     }
 
     /**
-     * isFinish method would return true if the agent has reached the finish node.
-     *
-     * @param row
-     * @param col
-     * @return boolean
+     * start method: This synchronized method starts a new thread for the training and the timer drawing the game.
+     * We set our boolean variable executing to true for our game loop.
      */
-    private boolean isFinish(int row, int col) {
-        if (node[row][col].isFinish()) {
-            return true;
+    public synchronized void start() {
+        try {
+            executing = true;
+            thread = new Thread(this);
+            thread.start();
+            renderer.start();
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return false;
     }
 
     /**
-     * getVectorPos method: Depending on the direction the agent can move to, we change the position of the agent by
-     * changing its vector position. We would return the vector position to mark the nextPosition that the agent would
-     * take.
-     *
-     * @param currentPos
-     * @param action
-     * @return Vector - the nextPosition the agent can take.
+     * stop method: This synchronized method ends the game loop and waits for the training thread to finish.
      */
-    private Vector getVectorPos(Vector currentPos, int action) {
-        Vector nextPos = Vector.clone(currentPos);
-
-        // If the agent can move UP and if it is in bounds, then that would be its nextPos
-        if (action == Action.UP.getIntEquivalent() && nextPos.getRow() > 0) {
-            nextPos.setRow(nextPos.getRow() - 1);
-        }
-        // If the agent can move DOWN and if it is in bounds, then that would be its nextPos
-        if (action == Action.DOWN.getIntEquivalent() && nextPos.getRow() < rows - 1) {
-            nextPos.setRow(nextPos.getRow() + 1);
-        }
-        // If the agent can move LEFT and if it is in bounds, then that would be its nextPos
-        if (action == Action.LEFT.getIntEquivalent() && nextPos.getCol() > 0) {
-            nextPos.setCol(nextPos.getCol() - 1);
-        }
-        // If the agent can move RIGHT and if it is in bounds, then that would be its nextPos
-        if (action == Action.RIGHT.getIntEquivalent() && nextPos.getCol() < cols - 1) {
-            nextPos.setCol(nextPos.getCol() + 1);
+    public synchronized void stop() {
+        try {
+            executing = false;
+            renderer.stop();
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.join();
+            }
+            if (checkpoint != null) {
+                checkpoint.stop();
+            }
+            if (policyServer != null) {
+                policyServer.stop();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return nextPos; // Return the vector position.
     }
 
     /**
-     * getMaxQValue method would return the neighbouring node's Q-Value which has the highest Q-Value
-     *
-     * @param currentPos
-     * @return
+     * publish method: The training thread publishes a new snapshot of the engine for the UI thread, at most once
+     * per frame. The snapshot shares every chunk of the last one that did not change since, so a frame only copies
+     * the chunks the training touched and not the whole Q-table.
      */
-    private double getMaxQValue(Vector currentPos) {
-        double maxQValue = -1000;
-        ArrayList<Action> actions = getAction(currentPos);
-
-        // Get all the valid directions the agent can go to in its current position
-        for (int i = 0; i < actions.size(); i++) {
-            // Get their integer equivalent
-            int getAction = actions.get(i).getIntEquivalent();
-            // Get that neighboring node's vector position.
-            Vector neighbouringNode = getVectorPos(currentPos, getAction);
-            // Get its Q-value
-            double value = node[neighbouringNode.getRow()][neighbouringNode.getCol()].getQValue();
-
-            // Get the node with the highest Q-value
-            if (value > maxQValue) {
-                maxQValue = value;
+    private void publish() {
+        long now = System.nanoTime();
+        if (now - lastPublished >= FRAME_NANOS) {
+            published = engine.snapshot(published);
+            if (policyServer != null) {
+                publishedPolicy = engine.policy(publishedPolicy);
+                policyServer.publish(publishedPolicy);
             }
+            lastPublished = now;
         }
-        return maxQValue; // Return that Q-value
     }
 
     /**
-     * getMaxQIndex method is the same as above, except here we are returning the neighbouring node's vector
-     * positon which has the highest Q-Value.
-     *
-     * @param currentPos
-     * @return Vector - neighbouring node with the highest Q-Value.
+     * render method: The UI thread draws the latest published snapshot. The grid view only paints the cells whose
+     * state or Q-value changed since the last snapshot it drew.
      */
-    private Vector getMaxQIndex(Vector currentPos) {
-        double maxQValue = -1000;
-        ArrayList<Action> actions = getAction(currentPos);
-        Vector nextPos = new Vector(0, 0);
-
-        for (int i = 0; i < actions.size(); i++) {
-            int getAction = actions.get(i).getIntEquivalent();
-            Vector neighbouringNode = getVectorPos(currentPos, getAction);
-            double value = node[neighbouringNode.getRow()][neighbouringNode.getCol()].getQValue();
-
-            if (value > maxQValue) {
-                maxQValue = value;
-                nextPos = neighbouringNode;
-            }
-        }
-        return nextPos;
+    private void render() {
+        gridView.setSnapshot(published);
     }
 
-
     /**
-     * calculateEpsilon method helps us decide if the agent should keep exploring or whether the agent should exploit
-     * what it has learnt i.e., follow the path with the highest Q-value. This epsilon value slowly keeps decreasing
-     * as our number of episodes increase, making the AI chose the path with highest Q-value as the game progresses.
-     * <p>
-     * Formula taken from: https://www.datacamp.com/tutorial/introduction-q-learning-beginner-tutorial
+     * changeAgentPos method: This method would change the position of the agent AI. In this game, we want
+     * the AI to move towards the finish node.
      *
-     * @param episode
-     * @return
+     * @param nextPos
      */
-    private double calculateEpsilon(int episode) {
-        return this.minEpsilon + (this.maxEpsilon - this.minEpsilon) * Math.exp(-this.decayRate * episode);
+    public void changeAgentPos(Vector nextPos) {
+        // The engine keeps the agent separately, the nodes follow with the next published snapshot
+        engine.moveAgent(engine.index(nextPos.getRow(), nextPos.getCol()));
     }
 
     /**
-     * decideAction method would use the epsilon value calculated above to either make the agent explore
-     * the environment by giving it a random index, or it could make the agent follow a fixed path. This
-     * completely depends on the epsilon value.
+     * isFinish method would return true if the agent has reached the finish node.
      *
-     * @param currentPos
-     * @param actionDirection
-     * @param episode
-     * @return
+     * @param row
+     * @param col
+     * @return boolean
      */
-    private Vector decideAction(Vector currentPos, int actionDirection, int episode) {
-        // Calculate epsilon value
-        double epsilon = calculateEpsilon(episode);
-        // Get random double between [0,1]
-        double randomInt = random.nextDouble(1);
-        Vector action;
-        if (randomInt > epsilon) {
-            // Get the max QValue Index from the current node's neighbours.
-            action = getMaxQIndex(currentPos);
-        } else {
-            // Get a random vector position
-            action = getVectorPos(currentPos, actionDirection);
-        }
-        return action;
+    private boolean isFinish(int row, int col) {
+        return engine.getCellType(row, col) == Engine.FINISH;
     }
 
     /**
      * printQTable method would print Q Table
      */
     private void printQTable() {
-        for (int i = 0; i < node.length; i++) {
-            for (int j = 0; j < node[i].length; j++) {
-                System.out.println(i + ", " + j + " QValue: " + node[i][j].getQValue());
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                System.out.println(i + ", " + j + " QValue: " + engine.getQValue(i, j));
             }
         }
     }
 
     /**
-     * qLearningAlgorithm method: We are training our agent in the qLearningAlgorithm 10000 times (episodes)
-     * and during this the agent is both getting trained and is searching for the finish node. Based on the
-     * epsilon value we either get the neighbouring node randomly (explore) or we get the node by getting its maxQValue.
-     * The aim of this method is to access all the neighbouring nodes of the current node and set their Q-value.
-     * The agent will explore until it finds the finish node and when it does it would have trained more than
-     * 100000 times, this will get us a clear picture of the best Q values.
-     * We make our agent move to the neighbouring nodes with the highest Q value eventually leading to the final node
+     * qLearningAlgorithm method: The engine trains our agent 10000 times (episodes) from its current position and
+     * we move our agent to the neighbouring node with the highest Q value, eventually leading to the final node
      * by avoiding obstacles and getting the shortest (and highest reward) path possible.
      *
      * @param currentPos
      * @return Vector - next position to head to
      */
     private Vector qLearningAlgorithm(Vector currentPos) {
-        // Everytime this method is called, train 10000 times
-        for (int episodes = 0; episodes < 10000; episodes++) {
-            // Clone currentPos vector
-            Vector currentPosClone = Vector.clone(currentPos);
-            // Get the list of possible actions
-            ArrayList<Action> possibleActions = getAction(currentPosClone);
-            // We go through each of the possible actions
-            for (int i = 0; i < possibleActions.size(); i++) {
-                // Get the possible action's integer equivalent
-                int actionDirection = possibleActions.get(i).getIntEquivalent();
-
-                // We get the nextPos by checking the epsilon value
-                // The number of episodes play a huge part, the epsilon value will keep
-                // decreasing if the number of episodes increase. This also guarantees that
-                // as the agent gets trained it would choose paths wisely by checking Q-Value
-                // and not just simply choosing a random path.
-                Vector nextPos = decideAction(currentPosClone, actionDirection, episodes);
-
-                // We get the QValue of the next node
-                double nextQValue = node[nextPos.getRow()][nextPos.getCol()].getQValue();
-                // Get the max Q value of neighbouring nodes of next node.
-                double maxQ = getMaxQValue(nextPos);
-                // Get the reward value of next node
-                int nextReward = node[nextPos.getRow()][nextPos.getCol()].getReward();
-
-                // Bellman's equation to calculate Q-value
-                double value = nextQValue + alpha * (nextReward + gamma * maxQ - nextQValue);
-
-                // Set the nextPosition's Q-value to the one calculated above
-                node[nextPos.getRow()][nextPos.getCol()].setQValue(value);
-
-                //currentPosition is set to the nextPosition
-                currentPosClone.setRow(nextPos.getRow());
-                currentPosClone.setCol(nextPos.getCol());
-            }
-        }
-
-        // We want our agent to make wise decisions, and we also want to move node by node.
-        // Using the current position of the agent we get the neighboring node with the
-        //highest Q-value and set our current position vector to that node position.
-        Vector nextPos = getMaxQIndex(currentPos);
-        currentPos.setRow(nextPos.getRow());
-        currentPos.setCol(nextPos.getCol());
+        int nextPos = engine.qLearningAlgorithm(engine.index(currentPos.getRow(), currentPos.getCol()));
+        currentPos.setRow(nextPos / cols);
+        currentPos.setCol(nextPos % cols);
 
         return currentPos; // We return that position.
     }
@@ -455,27 +347,23 @@ public class Game extends JPanel implements Runnable {
      * update method would update the state of the game.
      */
     public void update() {
-        // Introduce some time interval in order to see the agent change position
-        try {
-            Thread.sleep(100);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Make the map edits first
+        Runnable edit;
+        while ((edit = edits.poll()) != null) {
+            edit.run();
         }
 
         // Get the next position from the qLearningAlgorithm
+        int actions = engine.getAction(engine.index(currentPos.getRow(), currentPos.getCol())).length;
+        metrics.beginMove();
         Vector nextPos = qLearningAlgorithm(currentPos);
         changeAgentPos(nextPos); // Change the agent's position
+        metrics.endMove(engine.getLastEpisodes(), (long) engine.getLastEpisodes() * actions, engine.getLastEpsilon(),
+                engine.getLastMaxDelta(), engine.getCellType(nextPos.getRow(), nextPos.getCol()));
 
         // For debugging purposes
         //printQTable();
 
-        // Introduce some time interval in order to see the agent change position
-        try {
-            Thread.sleep(100);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         // If we have reached the finish node
         if (isFinish(nextPos.getRow(), nextPos.getCol())) {
             // Set the row and col back to start position (0,0)
@@ -484,17 +372,19 @@ public class Game extends JPanel implements Runnable {
             // Change position
             changeAgentPos(currentPos);
         }
+
+        // Let the UI thread know about the new state
+        publish();
     }
 
     /**
-     * run method would keep the game running in an infinite loop.
+     * run method would keep the game running in an infinite loop. The training runs at full speed, the UI thread
+     * draws it at its own frame rate.
      */
     @Override
     public void run() {
         while (executing) {
-            processInput();
             update();
         }
-        stop();
     }
 }
@@ -0,0 +1,416 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * GridView class: A single component painting the whole map (cells, agent and an optional Q-value heatmap) from
+ * a snapshot into a back buffer. Only the visible part of the map is painted, so the cost of painting depends on
+ * the number of pixels and not on the number of cells.
+ * <p>
+ * Mouse wheel zooms, dragging pans and the H key turns the heatmap on and off. Clicking a cell is passed on to the
+ * cell listener, if there is one.
+ *
+ * @author Harshal
+ */
+public class GridView extends JComponent {
+
+    // Colors of the cell types, the same ones the nodes used to have
+    private static final Color START = Color.ORANGE;
+    private static final Color FINISH = Color.GREEN;
+    private static final Color HOLE = Color.RED;
+    private static final Color IDLE = Color.WHITE;
+    private static final Color GRID = Color.GRAY;
+
+    // Cells smaller than this are painted pixel by pixel, cells larger than these get grid lines and text
+    private static final double MIN_RECT_SIZE = 2;
+    private static final double MIN_GRID_SIZE = 8;
+    private static final double MIN_TEXT_SIZE = 40;
+
+    // Snapshot to draw and the snapshot the back buffer shows
+    private Snapshot snapshot;
+    private Snapshot drawn;
+
+    // Size of a cell in pixels and the pixel of the map shown in the top left corner of the component
+    private double cellSize;
+    private double offsetX;
+    private double offsetY;
+
+    // Heatmap and the Q-value range it was drawn with
+    private boolean heatmap;
+    private double minQValue;
+    private double maxQValue;
+
+    // Back buffer and whether it has to be painted again completely
+    private BufferedImage buffer;
+    private boolean invalid = true;
+
+    // Last mouse position while dragging
+    private Point drag;
+
+    // Gets the cells that are clicked
+    private CellListener cellListener;
+
+    /**
+     * GridView constructor
+     *
+     * @param snapshot
+     * @param cellSize
+     */
+    public GridView(Snapshot snapshot, double cellSize) {
+        this.snapshot = snapshot;
+        this.cellSize = cellSize;
+
+        setPreferredSize(new Dimension((int) Math.ceil(cellSize * snapshot.getCols()),
+                (int) Math.ceil(cellSize * snapshot.getRows())));
+        setFocusable(true);
+        setToolTipText("");
+
+        // Zoom around the mouse with the mouse wheel and pan by dragging
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                drag = e.getPoint();
+                requestFocusInWindow();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                offsetX -= e.getX() - drag.x;
+                offsetY -= e.getY() - drag.y;
+                drag = e.getPoint();
+                invalidateBuffer();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = getRow(e);
+                int col = getCol(e);
+                Snapshot shown = snapshot;
+                if (cellListener != null && row >= 0 && col >= 0 && row < shown.getRows() && col < shown.getCols()) {
+                    cellListener.cellClicked(row, col, e.isShiftDown());
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(Math.pow(1.25, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        // Turn the heatmap on and off with the H key
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_H) {
+                    setHeatmap(!heatmap);
+                }
+            }
+        });
+    }
+
+    /**
+     * setSnapshot method shows a new snapshot. Only the cells that changed are painted again.
+     *
+     * @param snapshot
+     */
+    public void setSnapshot(Snapshot snapshot) {
+        if (snapshot != this.snapshot) {
+            this.snapshot = snapshot;
+            repaint();
+        }
+    }
+
+    /**
+     * setHeatmap method turns the Q-value heatmap on or off.
+     *
+     * @param heatmap
+     */
+    public void setHeatmap(boolean heatmap) {
+        this.heatmap = heatmap;
+        invalidateBuffer();
+    }
+
+    /**
+     * zoom method changes the size of the cells by the factor, keeping the map pixel under (x, y) in place.
+     *
+     * @param factor
+     * @param x
+     * @param y
+     */
+    public void zoom(double factor, int x, int y) {
+        double newCellSize = Math.max(1.0 / 64, Math.min(200, cellSize * factor));
+        offsetX = (offsetX + x) * newCellSize / cellSize - x;
+        offsetY = (offsetY + y) * newCellSize / cellSize - y;
+        cellSize = newCellSize;
+        invalidateBuffer();
+    }
+
+    /**
+     * setCellListener method sets the listener that gets the clicked cells.
+     *
+     * @param cellListener
+     */
+    public void setCellListener(CellListener cellListener) {
+        this.cellListener = cellListener;
+    }
+
+    /**
+     * getRow method returns the row of the map under the mouse.
+     *
+     * @param e
+     * @return int
+     */
+    private int getRow(MouseEvent e) {
+        return (int) Math.floor((e.getY() + offsetY) / cellSize);
+    }
+
+    /**
+     * getCol method returns the col of the map under the mouse.
+     *
+     * @param e
+     * @return int
+     */
+    private int getCol(MouseEvent e) {
+        return (int) Math.floor((e.getX() + offsetX) / cellSize);
+    }
+
+    /**
+     * invalidateBuffer method makes the next paint draw the whole back buffer again.
+     */
+    private void invalidateBuffer() {
+        invalid = true;
+        repaint();
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int row = getRow(e);
+        int col = getCol(e);
+        Snapshot shown = snapshot;
+        if (row < 0 || col < 0 || row >= shown.getRows() || col >= shown.getCols()) {
+            return null;
+        }
+        return String.format("(%d, %d) Q-value: %.2f", row, col, shown.getQValue(row * shown.getCols() + col));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+            buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            invalid = true;
+        }
+
+        Snapshot current = snapshot;
+        if (heatmap && !invalid) {
+            // A new Q-value range changes the color of every cell
+            double[] range = visibleRange(current);
+            invalid = range[0] != minQValue || range[1] != maxQValue;
+        }
+        if (invalid || drawn == null || cellSize < MIN_RECT_SIZE) {
+            paintAll(current);
+        } else {
+            paintChanged(current);
+        }
+        drawn = current;
+        invalid = false;
+
+        g.drawImage(buffer, 0, 0, null);
+    }
+
+    /**
+     * paintAll method paints the whole visible part of the map into the back buffer. Small cells are painted
+     * pixel by pixel, every pixel showing the cell under its top left corner.
+     *
+     * @param current
+     */
+    private void paintAll(Snapshot current) {
+        if (heatmap) {
+            double[] range = visibleRange(current);
+            minQValue = range[0];
+            maxQValue = range[1];
+        }
+
+        if (cellSize >= MIN_RECT_SIZE) {
+            Graphics2D g = buffer.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
+            int[] visible = visibleCells(current);
+            for (int row = visible[0]; row < visible[1]; row++) {
+                for (int col = visible[2]; col < visible[3]; col++) {
+                    paintCell(g, current, row, col);
+                }
+            }
+            g.dispose();
+            return;
+        }
+
+        int[] pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        for (int y = 0; y < height; y++) {
+            int row = (int) Math.floor((y + offsetY) / cellSize);
+            for (int x = 0; x < width; x++) {
+                int col = (int) Math.floor((x + offsetX) / cellSize);
+                if (row < 0 || col < 0 || row >= current.getRows() || col >= current.getCols()) {
+                    pixels[y * width + x] = 0;
+                } else {
+                    pixels[y * width + x] = colorOf(current, row * current.getCols() + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * paintChanged method paints only the visible cells whose shown type or Q-value is different from the
+     * snapshot the back buffer shows.
+     *
+     * @param current
+     */
+    private void paintChanged(Snapshot current) {
+        Graphics2D g = buffer.createGraphics();
+        int[] visible = visibleCells(current);
+        for (int row = visible[0]; row < visible[1]; row++) {
+            for (int col = visible[2]; col < visible[3]; col++) {
+                int index = row * current.getCols() + col;
+                if (current.getShownType(index) != drawn.getShownType(index)
+                        || (heatmap && current.getQValue(index) != drawn.getQValue(index))) {
+                    paintCell(g, current, row, col);
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * paintCell method paints one cell with its grid lines and text.
+     *
+     * @param g
+     * @param current
+     * @param row
+     * @param col
+     */
+    private void paintCell(Graphics2D g, Snapshot current, int row, int col) {
+        int x = (int) Math.floor(col * cellSize - offsetX);
+        int y = (int) Math.floor(row * cellSize - offsetY);
+        int size = (int) Math.floor((col + 1) * cellSize - offsetX) - x;
+        int index = row * current.getCols() + col;
+
+        g.setColor(new Color(colorOf(current, index)));
+        g.fillRect(x, y, size, size);
+        if (cellSize >= MIN_GRID_SIZE) {
+            g.setColor(GRID);
+            g.drawRect(x, y, size - 1, size - 1);
+        }
+        if (cellSize >= MIN_TEXT_SIZE) {
+            String text = textOf(current.getShownType(index));
+            FontMetrics metrics = g.getFontMetrics();
+            g.setColor(Color.BLACK);
+            g.drawString(text, x + (size - metrics.stringWidth(text)) / 2, y + (size + metrics.getAscent()) / 2);
+        }
+    }
+
+    /**
+     * colorOf method returns the color of a cell. With the heatmap on, idle cells are colored by their Q-value
+     * from blue (lowest visible Q-value) to yellow (highest visible Q-value).
+     *
+     * @param current
+     * @param index
+     * @return int - RGB value of the color
+     */
+    private int colorOf(Snapshot current, int index) {
+        byte type = current.getShownType(index);
+        if (type == Engine.START) {
+            return START.getRGB();
+        }
+        if (type == Engine.FINISH) {
+            return FINISH.getRGB();
+        }
+        if (type == Engine.HOLE) {
+            return HOLE.getRGB();
+        }
+        if (!heatmap || maxQValue <= minQValue) {
+            return IDLE.getRGB();
+        }
+        double value = (current.getQValue(index) - minQValue) / (maxQValue - minQValue);
+        int level = (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+        return 0xFF000000 | level << 16 | level << 8 | (255 - level);
+    }
+
+    /**
+     * textOf method returns the text of a cell type, the same text the nodes used to have.
+     *
+     * @param type
+     * @return String
+     */
+    private static String textOf(byte type) {
+        switch (type) {
+            case Engine.START:
+                return "Start";
+            case Engine.FINISH:
+                return "Goal";
+            case Engine.HOLE:
+                return "Hole";
+            default:
+                return "Idle";
+        }
+    }
+
+    /**
+     * visibleCells method returns the first and last (exclusive) visible row and col.
+     *
+     * @param current
+     * @return int[] - first row, end row, first col and end col
+     */
+    private int[] visibleCells(Snapshot current) {
+        int firstRow = Math.max(0, (int) Math.floor(offsetY / cellSize));
+        int endRow = Math.min(current.getRows(), (int) Math.ceil((offsetY + getHeight()) / cellSize));
+        int firstCol = Math.max(0, (int) Math.floor(offsetX / cellSize));
+        int endCol = Math.min(current.getCols(), (int) Math.ceil((offsetX + getWidth()) / cellSize));
+        return new int[]{firstRow, endRow, firstCol, endCol};
+    }
+
+    /**
+     * visibleRange method returns the lowest and highest Q-value of the visible idle cells.
+     *
+     * @param current
+     * @return double[] - lowest and highest Q-value
+     */
+    private double[] visibleRange(Snapshot current) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        int[] visible = visibleCells(current);
+        // On zoomed out maps we only look at the cells that end up on a pixel
+        int step = Math.max(1, (int) Math.floor(1 / cellSize));
+        for (int row = visible[0]; row < visible[1]; row += step) {
+            for (int col = visible[2]; col < visible[3]; col += step) {
+                int index = row * current.getCols() + col;
+                if (current.getShownType(index) == Engine.IDLE) {
+                    min = Math.min(min, current.getQValue(index));
+                    max = Math.max(max, current.getQValue(index));
+                }
+            }
+        }
+        return new double[]{min, max};
+    }
+
+    /**
+     * CellListener interface: Gets the cells clicked on the map, shift tells whether shift was held down.
+     */
+    public interface CellListener {
+        void cellClicked(int row, int col, boolean shift);
+    }
+}
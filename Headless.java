@@ -0,0 +1,384 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Headless class: Trains the agent from the command line without any window and without any sleep, and prints
+ * the throughput, the convergence and the final policy as JSON or CSV.
+ * <p>
+ * Usage: java Headless [options]
+ * <pre>
+ *   --size ROWSxCOLS     size of the generated map (default 6x6)
+ *   --holes N            exact number of holes of the generated map (default (rows + cols) / 4 + 1)
+ *   --density X          fraction of the cells off the protected path that are holes, instead of --holes
+ *   --map FILE           ASCII or PGM map file instead of a generated map, see MapLoader
+ *   --seed N             seed of the map and the training (default random); with one thread the same seed
+ *                        gives the same run bit for bit
+ *   --moves N            number of agent moves to train (default 1000)
+ *   --episodes N         maximum episodes trained per move (default 10000)
+ *   --threads N          number of training workers (default 1)
+ *   --solver NAME        q-learning, value-iteration or prioritized-sweeping (default q-learning)
+ *   --levels N           warm-start the Q-table from N coarser levels of the map, see HierarchicalTrainer
+ *                        (default 0, off)
+ *   --alpha X --gamma X --decay X --min-epsilon X --max-epsilon X
+ *   --tolerance X --patience N --sweep N
+ *   --replay N           experience replay capacity (default 0, off)
+ *   --batch N            transitions replayed after every episode (default 32)
+ *   --prioritized BOOL   replay transitions by TD-error (default false)
+ *   --qtable TYPE        Q-table storage, dense, sparse, float32 or int16 (default dense)
+ *   --qtable-memory MB   memory cap of the Q-values of a sparse Q-table (default no cap), the map and
+ *                        the policy cache take about 3 more bytes per cell
+ *   --checkpoint FILE    continue from and save to a checkpoint
+ *   --checkpoint-interval SECONDS
+ *                        also save the checkpoint this often while training (default 0, only at the end)
+ *   --serve PORT         answer policy queries on localhost while training and afterwards, see PolicyServer
+ *   --format json|csv    output format (default json)
+ * </pre>
+ *
+ * @author Harshal
+ */
+public class Headless {
+
+    // Training publishes a new policy to the policy server at most this often
+    private static final long PUBLISH_NANOS = 1_000_000_000L / 30;
+
+    public static void main(String[] args) {
+        try {
+            System.out.println(run(args));
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * run method parses the arguments, trains and returns the formatted statistics. With a policy server the
+     * statistics are printed right away instead and the server keeps answering until the process is killed.
+     *
+     * @param args
+     * @return String
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    static String run(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = parse(args);
+        Hyperparameters hyperparameters = new Hyperparameters();
+        hyperparameters.setAlpha(getDouble(options, "alpha", hyperparameters.getAlpha()));
+        hyperparameters.setGamma(getDouble(options, "gamma", hyperparameters.getGamma()));
+        hyperparameters.setDecayRate(getDouble(options, "decay", hyperparameters.getDecayRate()));
+        hyperparameters.setMinEpsilon(getDouble(options, "min-epsilon", hyperparameters.getMinEpsilon()));
+        hyperparameters.setMaxEpsilon(getDouble(options, "max-epsilon", hyperparameters.getMaxEpsilon()));
+        hyperparameters.setTolerance(getDouble(options, "tolerance", hyperparameters.getTolerance()));
+        hyperparameters.setPatience((int) getLong(options, "patience", hyperparameters.getPatience()));
+        hyperparameters.setSweepEpisodes((int) getLong(options, "sweep", hyperparameters.getSweepEpisodes()));
+        hyperparameters.setEpisodes((int) getLong(options, "episodes", hyperparameters.getEpisodes()));
+        hyperparameters.setReplayCapacity((int) getLong(options, "replay", hyperparameters.getReplayCapacity()));
+        hyperparameters.setReplayBatchSize((int) getLong(options, "batch", hyperparameters.getReplayBatchSize()));
+        hyperparameters.setPrioritizedReplay(Boolean.parseBoolean(
+                options.getOrDefault("prioritized", String.valueOf(hyperparameters.isPrioritizedReplay()))));
+        hyperparameters.setQTableType(QTableType.fromName(options.getOrDefault("qtable",
+                hyperparameters.getQTableType().getName())));
+        hyperparameters.setQTableMemory(getLong(options, "qtable-memory", 0) << 20);
+
+        long seed = getLong(options, "seed", new SplittableRandom().nextLong());
+        int moves = (int) getLong(options, "moves", 1000);
+        int threads = (int) getLong(options, "threads", 1);
+        Solver solver = Solver.fromName(options.getOrDefault("solver", Solver.Q_LEARNING.getName()));
+        String format = options.getOrDefault("format", "json");
+        if (!format.equals("json") && !format.equals("csv")) {
+            throw new IllegalArgumentException("unknown format " + format);
+        }
+        // Planning and warm starts write every cell, a capped table would keep evicting what they wrote
+        if (hyperparameters.getQTableType() == QTableType.SPARSE && hyperparameters.getQTableMemory() > 0
+                && (solver != Solver.Q_LEARNING || getLong(options, "levels", 0) > 0)) {
+            throw new IllegalArgumentException("a sparse Q-table with --qtable-memory can only be trained with "
+                    + "q-learning and without --levels");
+        }
+
+        // The map, the training and the workers each get their own stream of the seed
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom mapRandom = random.split();
+        SplittableRandom trainRandom = random.split();
+        long workerSeed = random.nextLong();
+
+        // Load or generate the map
+        Engine engine;
+        if (options.containsKey("map")) {
+            engine = MapLoader.load(Paths.get(options.get("map")), hyperparameters, trainRandom);
+        } else {
+            String[] size = options.getOrDefault("size", "6x6").toLowerCase().split("x");
+            int rows = Integer.parseInt(size[0].trim());
+            int cols = size.length > 1 ? Integer.parseInt(size[1].trim()) : rows;
+            engine = new Engine(rows, cols, hyperparameters, trainRandom);
+            if (options.containsKey("density")) {
+                MapGenerator.generateDensity(engine, getDouble(options, "density", 0), threads, mapRandom);
+            } else if (options.containsKey("holes")) {
+                MapGenerator.generate(engine, getLong(options, "holes", 0), threads, mapRandom);
+            } else {
+                MapGenerator.generate(engine, mapRandom);
+            }
+        }
+
+        // Q-learning would round every small update away on a coarse Q-table, it can only be planned
+        if (solver == Solver.Q_LEARNING && !engine.isLearnable()) {
+            throw new IllegalArgumentException("the " + hyperparameters.getQTableType().getName() + " Q-table is too "
+                    + "coarse for q-learning on this map, use a planning solver or a finer Q-table");
+        }
+
+        // Continue from the checkpoint if there is one
+        Checkpoint checkpoint = null;
+        boolean restored = false;
+        if (options.containsKey("checkpoint")) {
+            Path path = Paths.get(options.get("checkpoint"));
+            if (Files.exists(path)) {
+                engine.restore(Checkpoint.read(path));
+                restored = true;
+            }
+            checkpoint = new Checkpoint(path, engine::snapshot);
+        }
+
+        // Otherwise warm-start the Q-table from the coarse levels of the map
+        int levels = (int) getLong(options, "levels", 0);
+        HierarchicalTrainer hierarchy = null;
+        long warmStartNanos = 0;
+        if (levels > 0 && !restored) {
+            long begin = System.nanoTime();
+            hierarchy = new HierarchicalTrainer(engine, hyperparameters, levels, random.split(), threads);
+            levels = hierarchy.warmStart(moves);
+            warmStartNanos = System.nanoTime() - begin;
+        }
+
+        // Q-learning trains on the workers, the other solvers plan with them
+        Planner planner = solver != Solver.Q_LEARNING ? new Planner(engine, solver, threads) : null;
+        ParallelTrainer trainer = planner == null && threads > 1
+                ? new ParallelTrainer(engine, threads, workerSeed) : null;
+        PolicyServer server = null;
+        if (options.containsKey("serve")) {
+            server = new PolicyServer((int) getLong(options, "serve", 0), engine.policy());
+            server.start();
+            System.err.println("Serving the policy on http://localhost:" + server.getPort());
+        }
+        long checkpointNanos = (long) (getDouble(options, "checkpoint-interval", 0) * 1e9);
+        if (checkpointNanos < 0 || checkpointNanos > 0 && checkpoint == null) {
+            throw new IllegalArgumentException("--checkpoint-interval needs --checkpoint and a positive number of "
+                    + "seconds");
+        }
+        Map<String, Object> stats = train(engine, trainer, planner, server, checkpoint, checkpointNanos, moves);
+        if (trainer != null) {
+            trainer.shutdown();
+        }
+        if (planner != null) {
+            planner.shutdown();
+        }
+        if (checkpoint != null) {
+            checkpoint.save();
+        }
+
+        stats.put("solver", solver.getName());
+        stats.put("seed", seed);
+        stats.put("threads", threads);
+        stats.put("qTable", hyperparameters.getQTableType().getName());
+        stats.put("qTableBytes", engine.getQTable().getMemoryBytes());
+        if (hierarchy != null) {
+            stats.put("levels", levels);
+            stats.put("warmStartMoves", hierarchy.getLastMoves());
+            stats.put("warmStartSweeps", hierarchy.getLastSweeps());
+            stats.put("warmStartUpdates", hierarchy.getLastUpdates());
+            stats.put("warmStartSeconds", warmStartNanos / 1e9);
+        }
+        String output = format.equals("json") ? toJson(stats) : toCsv(stats);
+        if (server != null) {
+            server.publish(engine.policy());
+            System.out.println(output);
+            Thread.currentThread().join();
+        }
+        return output;
+    }
+
+    /**
+     * train method moves the agent the given number of times the same way the game does, training before every
+     * move, and collects the statistics of the run. With a planner the Q-table is planned before every move
+     * instead and every Bellman update counts as an update. With a checkpoint interval the checkpoint is saved
+     * between the moves whenever that much time has passed, from a snapshot that shares the unchanged chunks of
+     * the previous one.
+     *
+     * @param engine
+     * @param trainer
+     * @param planner
+     * @param server
+     * @param checkpoint
+     * @param checkpointNanos - time between the checkpoints saved while training, 0 to not save any
+     * @param moves
+     * @return Map - statistics by name
+     */
+    static Map<String, Object> train(Engine engine, ParallelTrainer trainer, Planner planner, PolicyServer server,
+                                     Checkpoint checkpoint, long checkpointNanos, int moves) {
+        long episodes = 0;
+        long updates = 0;
+        long goals = 0;
+        int convergenceMove = -1;
+        int currentPos = engine.getAgent();
+
+        TrainingMetrics metrics = TrainingMetrics.register("headless");
+        long begin = System.nanoTime();
+        long lastPublished = begin;
+        Policy published = server != null ? server.getPolicy() : null;
+        long lastSaved = begin;
+        Snapshot saved = null;
+        for (int move = 1; move <= moves; move++) {
+            long moveEpisodes = 0;
+            long moveUpdates;
+            metrics.beginMove();
+            if (planner != null) {
+                currentPos = planner.qLearningAlgorithm(currentPos);
+                moveUpdates = planner.getLastUpdates();
+            } else if (trainer == null) {
+                int actions = engine.getAction(currentPos).length;
+                currentPos = engine.qLearningAlgorithm(currentPos);
+                moveEpisodes = engine.getLastEpisodes();
+                moveUpdates = moveEpisodes * actions;
+            } else {
+                long before = trainer.getEpisodes();
+                moveUpdates = trainer.train(currentPos, engine.getEpisodes());
+                moveEpisodes = trainer.getEpisodes() - before;
+                currentPos = engine.getMaxQIndex(currentPos);
+            }
+            engine.moveAgent(currentPos);
+            episodes += moveEpisodes;
+            updates += moveUpdates;
+            byte cellType = engine.getCellType(currentPos / engine.getCols(), currentPos % engine.getCols());
+            metrics.endMove(moveEpisodes, moveUpdates, planner != null ? 0 : engine.getLastEpsilon(),
+                    engine.getLastMaxDelta(), cellType);
+
+            // If we have reached the finish node, start again
+            if (engine.getCellType(currentPos / engine.getCols(), currentPos % engine.getCols()) == Engine.FINISH) {
+                goals++;
+                currentPos = engine.getStart();
+                engine.moveAgent(currentPos);
+            }
+            if (convergenceMove < 0 && engine.greedyPathLength(engine.getStart()) >= 0) {
+                convergenceMove = move;
+            }
+            if (server != null && System.nanoTime() - lastPublished >= PUBLISH_NANOS) {
+                published = engine.policy(published);
+                server.publish(published);
+                lastPublished = System.nanoTime();
+            }
+            if (checkpointNanos > 0 && System.nanoTime() - lastSaved >= checkpointNanos) {
+                saved = engine.snapshot(saved);
+                checkpoint.save(saved);
+                lastSaved = System.nanoTime();
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rows", engine.getRows());
+        stats.put("cols", engine.getCols());
+        stats.put("holes", engine.countHoles());
+        stats.put("solvable", MapGenerator.isSolvable(engine));
+        stats.put("moves", moves);
+        stats.put("episodes", episodes);
+        stats.put("updates", updates);
+        stats.put("seconds", seconds);
+        stats.put("updatesPerSecond", updates / seconds);
+        stats.put("episodesPerSecond", episodes / seconds);
+        stats.put("movesPerSecond", moves / seconds);
+        stats.put("meanEpisodesPerMove", (double) episodes / moves);
+        stats.put("lastMaxDelta", engine.getLastMaxDelta());
+        stats.put("goalsReached", goals);
+        stats.put("meanMovesToGoal", metrics.getMeanMovesToGoal());
+        stats.put("holeHits", metrics.getHoleHits());
+        stats.put("holeHitRate", metrics.getHoleHitRate());
+        stats.put("moveMicrosP50", metrics.getMoveMicrosP50());
+        stats.put("moveMicrosP99", metrics.getMoveMicrosP99());
+        stats.put("convergenceMove", convergenceMove);
+        int pathLength = engine.greedyPathLength(engine.getStart());
+        stats.put("policyReachesGoal", pathLength >= 0);
+        stats.put("policyPathLength", pathLength);
+        stats.put("policyReturn", pathLength >= 0 ? engine.greedyReturn(engine.getStart()) : 0);
+        return stats;
+    }
+
+    /**
+     * parse method reads "--name value" pairs into a map.
+     *
+     * @param args
+     * @return Map
+     */
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("expected --name value but got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static double getDouble(Map<String, String> options, String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    private static long getLong(Map<String, String> options, String name, long defaultValue) {
+        return options.containsKey(name) ? Long.parseLong(options.get(name)) : defaultValue;
+    }
+
+    /**
+     * toJson method formats the statistics as one JSON object.
+     *
+     * @param stats
+     * @return String
+     */
+    static String toJson(Map<String, Object> stats) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : stats.entrySet()) {
+            if (json.length() > 1) {
+                json.append(", ");
+            }
+            json.append('"').append(entry.getKey()).append("\": ");
+            if (entry.getValue() instanceof String) {
+                json.append('"').append(entry.getValue()).append('"');
+            } else {
+                json.append(format(entry.getValue()));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * toCsv method formats the statistics as a header line and a value line.
+     *
+     * @param stats
+     * @return String
+     */
+    static String toCsv(Map<String, Object> stats) {
+        StringBuilder header = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Map.Entry<String, Object> entry : stats.entrySet()) {
+            if (header.length() > 0) {
+                header.append(',');
+                values.append(',');
+            }
+            header.append(entry.getKey());
+            values.append(format(entry.getValue()));
+        }
+        return header + System.lineSeparator() + values;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return Double.isFinite(number) ? String.format(Locale.ROOT, "%.6g", number) : "null";
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.SplittableRandom;
+
+/**
+ * HierarchicalTrainer class: Warm-starts the Q-table of a large map from coarser versions of the same map. The
+ * reward of the finish node reaches the start of a large map only after a huge number of episodes, since it is
+ * discounted by gamma with every cell and the episodes only look a few cells around the agent. A coarse map has
+ * fewer cells between the start and the finish node, so it is learnt quickly, and its Q-values already point the
+ * way on the finer map.
+ * <p>
+ * Every level halves the rows and the cols of the level below: a block of 2x2 cells becomes one cell, a hole when
+ * more than half of the block are holes, and the blocks of the start and the finish node are never holes. One
+ * move on a coarse level covers two cells of the level below, so the coarse levels discount with gamma squared,
+ * gamma to the fourth, and so on. The coarsest level is trained from scratch the same way the game does. Every
+ * finer level then starts from the Q-values of the level above, interpolated between the centres of its open
+ * blocks, and a few value iteration sweeps over the level fix what the blocks could not see nearby. The engine
+ * itself is warm-started the same way and is then trained by the caller as usual.
+ *
+ * @author Harshal
+ */
+public class HierarchicalTrainer {
+
+    // Cells of a level in every direction that become one cell of the level above
+    private static final int FACTOR = 2;
+
+    // Levels are not made smaller than this many rows or cols
+    private static final int MIN_SIZE = 4;
+
+    // Value iteration sweeps over a level after it got the Q-values of the level above. Every sweep costs one
+    // Bellman update per cell, so this stays small: what the sweeps do not fix is left to the training.
+    private static final int SMOOTHING_SWEEPS = 4;
+
+    // Engine at full resolution, the hyperparameters it was created with and the number of coarse levels
+    private final Engine engine;
+    private final Hyperparameters hyperparameters;
+    private final int levels;
+    private final SplittableRandom random;
+
+    // Threads sweeping the row bands of a level
+    private final int threads;
+
+    // Moves trained on the coarse levels, value iteration sweeps over all levels and the Bellman updates of both
+    // during the last warm start
+    private long lastMoves;
+    private long lastSweeps;
+    private long lastUpdates;
+
+    /**
+     * HierarchicalTrainer constructor
+     *
+     * @param engine
+     * @param hyperparameters - the hyperparameters of the engine
+     * @param levels - number of coarse levels above the engine
+     * @param random
+     * @param threads - threads sweeping a level
+     */
+    public HierarchicalTrainer(Engine engine, Hyperparameters hyperparameters, int levels, SplittableRandom random,
+                               int threads) {
+        if (levels < 1) {
+            throw new IllegalArgumentException("levels must be at least 1 but was " + levels);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        // Every cell gets a Q-value from the level above and is smoothed by a planner
+        if (engine.getQTable().isCapped()) {
+            throw new IllegalArgumentException("a capped " + engine.getQTable().getClass().getSimpleName()
+                    + " cannot hold the Q-values of a warm start");
+        }
+        this.engine = engine;
+        this.hyperparameters = hyperparameters;
+        this.levels = levels;
+        this.random = random;
+        this.threads = threads;
+    }
+
+    /**
+     * warmStart method builds the coarse levels, trains them from the coarsest to the finest and puts the
+     * Q-values of the finest coarse level into the engine. Levels that would get smaller than MIN_SIZE are left
+     * out. When the coarsest level is small enough to be learnt quickly (about 10x10 or less), the greedy path of
+     * the engine usually reaches the finish node afterwards, and the training of the engine only has to refine it.
+     * With fewer levels the coarsest one already runs out of moves, and the engine is left to the training.
+     *
+     * @param moves - most moves trained on every coarse level
+     * @return int - number of coarse levels trained
+     */
+    public int warmStart(int moves) {
+        Engine[] pyramid = new Engine[levels + 1];
+        pyramid[0] = engine;
+        double gamma = hyperparameters.getGamma();
+        int top = 0;
+        while (top < levels && Math.min(pyramid[top].getRows(), pyramid[top].getCols()) >= MIN_SIZE * FACTOR) {
+            gamma *= gamma;
+            Hyperparameters coarse = new Hyperparameters(hyperparameters);
+            coarse.setGamma(gamma);
+            // Coarse levels are small, a dense table is the fastest
+            coarse.setQTableType(QTableType.DENSE);
+            coarse.setQTableMemory(0);
+            pyramid[top + 1] = downsample(pyramid[top], coarse, random.split());
+            top++;
+        }
+
+        lastMoves = 0;
+        lastSweeps = 0;
+        lastUpdates = 0;
+        for (int level = top; level > 0; level--) {
+            // The coarsest level starts from scratch, the others only train if smoothing did not find the way
+            trainLevel(pyramid[level], moves);
+            upsample(pyramid[level], pyramid[level - 1]);
+            smooth(pyramid[level - 1]);
+        }
+        return top;
+    }
+
+    /**
+     * downsample method creates the level above a map, with one cell for every block of FACTOR x FACTOR cells.
+     *
+     * @param fine
+     * @param hyperparameters
+     * @param random
+     * @return Engine
+     */
+    static Engine downsample(Engine fine, Hyperparameters hyperparameters, SplittableRandom random) {
+        int rows = fine.getRows();
+        int cols = fine.getCols();
+        int coarseRows = (rows + FACTOR - 1) / FACTOR;
+        int coarseCols = (cols + FACTOR - 1) / FACTOR;
+        int[] holes = new int[coarseRows * coarseCols];
+        int[] cells = new int[coarseRows * coarseCols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int block = row / FACTOR * coarseCols + col / FACTOR;
+                cells[block]++;
+                if (fine.getCellType(row, col) == Engine.HOLE) {
+                    holes[block]++;
+                }
+            }
+        }
+        int start = fine.getStart() / cols / FACTOR * coarseCols + fine.getStart() % cols / FACTOR;
+        int finish = fine.getFinish() < 0 ? -1
+                : fine.getFinish() / cols / FACTOR * coarseCols + fine.getFinish() % cols / FACTOR;
+
+        Engine coarse = new Engine(coarseRows, coarseCols, hyperparameters, random);
+        for (int block = 0; block < holes.length; block++) {
+            // A block is a hole when most of it is holes
+            if (holes[block] * 2 > cells[block] && block != start && block != finish) {
+                coarse.setCellType(block, Engine.HOLE);
+            }
+        }
+        if (finish >= 0) {
+            coarse.setCellType(finish, Engine.FINISH);
+        }
+        coarse.setStart(start);
+        return coarse;
+    }
+
+    /**
+     * upsample method sets the Q-values of a map from the Q-values of the level above. The Q-value of a cell is
+     * interpolated between the centres of the (up to four) nearest open blocks, so the Q-values inside a block
+     * already lean towards the better neighbouring block. Holes get the reward of a hole.
+     *
+     * @param coarse
+     * @param fine
+     */
+    static void upsample(Engine coarse, Engine fine) {
+        int coarseRows = coarse.getRows();
+        int coarseCols = coarse.getCols();
+        for (int row = 0; row < fine.getRows(); row++) {
+            // Position of the cell centre in block coordinates, between the centres of two blocks
+            double y = (row + 0.5) / FACTOR - 0.5;
+            int top = (int) Math.floor(y);
+            double down = y - top;
+            for (int col = 0; col < fine.getCols(); col++) {
+                if (fine.getCellType(row, col) == Engine.HOLE) {
+                    fine.setQValue(row, col, Engine.rewardOf(Engine.HOLE));
+                    continue;
+                }
+                double x = (col + 0.5) / FACTOR - 0.5;
+                int left = (int) Math.floor(x);
+                double right = x - left;
+
+                double sum = 0;
+                double weights = 0;
+                for (int dy = 0; dy <= 1; dy++) {
+                    int blockRow = top + dy;
+                    if (blockRow < 0 || blockRow >= coarseRows) {
+                        continue;
+                    }
+                    for (int dx = 0; dx <= 1; dx++) {
+                        int blockCol = left + dx;
+                        if (blockCol < 0 || blockCol >= coarseCols
+                                || coarse.getCellType(blockRow, blockCol) == Engine.HOLE) {
+                            continue;
+                        }
+                        double weight = (dy == 0 ? 1 - down : down) * (dx == 0 ? 1 - right : right);
+                        sum += weight * coarse.getQValue(blockRow, blockCol);
+                        weights += weight;
+                    }
+                }
+                fine.setQValue(row, col, weights > 0 ? sum / weights : 0);
+            }
+        }
+    }
+
+    /**
+     * smooth method runs SMOOTHING_SWEEPS value iteration sweeps over a level, on the row bands of a planner. The
+     * interpolated Q-values are only right up to the detail the level above could not see, like a dead end
+     * behind holes that got the value of the open blocks around it, and every sweep carries the real values of
+     * the level one cell further. That fixes the detail around every cell, but not a wrong way taken by the level
+     * above: value iteration from scratch needs about as many sweeps as the path is long, which would cost more
+     * than the warm start saves. The planner needs one double per cell of the level while it sweeps.
+     *
+     * @param level
+     */
+    private void smooth(Engine level) {
+        Planner planner = new Planner(level, Solver.VALUE_ITERATION, threads);
+        try {
+            lastUpdates += planner.iterate(SMOOTHING_SWEEPS);
+            lastSweeps += planner.getLastIterations();
+        } finally {
+            planner.shutdown();
+        }
+    }
+
+    /**
+     * trainLevel method moves the agent of a level the same way the game does, training before every move and
+     * starting over when the finish node is reached, until the greedy path from the start reaches the finish node.
+     *
+     * @param level
+     * @param moves - most moves to train
+     */
+    private void trainLevel(Engine level, int moves) {
+        int currentPos = level.getStart();
+        level.moveAgent(currentPos);
+        for (int move = 0; move < moves; move++) {
+            if (level.greedyPathLength(level.getStart()) >= 0) {
+                return;
+            }
+            int actions = level.getAction(currentPos).length;
+            currentPos = level.qLearningAlgorithm(currentPos);
+            lastMoves++;
+            lastUpdates += (long) level.getLastEpisodes() * actions;
+            level.moveAgent(currentPos);
+
+            // If we have reached the finish node, start again
+            if (level.getCellType(currentPos / level.getCols(), currentPos % level.getCols()) == Engine.FINISH) {
+                currentPos = level.getStart();
+                level.moveAgent(currentPos);
+            }
+        }
+    }
+
+    // Getters
+    public int getLevels() {
+        return levels;
+    }
+
+    public long getLastMoves() {
+        return lastMoves;
+    }
+
+    public long getLastSweeps() {
+        return lastSweeps;
+    }
+
+    public long getLastUpdates() {
+        return lastUpdates;
+    }
+}
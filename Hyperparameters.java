@@ -0,0 +1,199 @@
+/**
+ * Hyperparameters class: Holds the learning settings of an engine, so every engine can be trained with its own
+ * configuration. The defaults are the values the simulation has always used.
+ *
+ * @author Harshal
+ */
+public class Hyperparameters {
+
+    // Q-Learning
+    private double alpha = 0.2; // Learning rate
+    private double gamma = 0.7; // Discount rate
+
+    // Epsilon
+    private double maxEpsilon = 1.0;
+    private double minEpsilon = 0.05;
+    private double decayRate = 0.0005;
+
+    // Number of episodes trained for every move of the agent
+    private int episodes = 10000;
+
+    // Training stops early when no Q-value changed more than the tolerance during patience sweeps in a row.
+    // A tolerance of 0 turns early stopping off.
+    private double tolerance = 1e-3;
+    private int patience = 5;
+    private int sweepEpisodes = 100;
+
+    // Experience replay: transitions kept for replaying (0 turns replay off), transitions replayed after every
+    // episode and whether transitions with a large TD-error are replayed more often
+    private int replayCapacity = 0;
+    private int replayBatchSize = 32;
+    private boolean prioritizedReplay = false;
+
+    // Storage of the Q-table and the memory cap of a sparse Q-table in bytes (0 for no cap)
+    private QTableType qTableType = QTableType.DENSE;
+    private long qTableMemory = 0;
+
+    /**
+     * Hyperparameters constructor with the default values
+     */
+    public Hyperparameters() {
+    }
+
+    /**
+     * Hyperparameters constructor
+     *
+     * @param alpha
+     * @param gamma
+     * @param decayRate
+     */
+    public Hyperparameters(double alpha, double gamma, double decayRate) {
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.decayRate = decayRate;
+    }
+
+    /**
+     * Hyperparameters constructor copying all the settings of other hyperparameters
+     *
+     * @param other
+     */
+    public Hyperparameters(Hyperparameters other) {
+        alpha = other.alpha;
+        gamma = other.gamma;
+        maxEpsilon = other.maxEpsilon;
+        minEpsilon = other.minEpsilon;
+        decayRate = other.decayRate;
+        episodes = other.episodes;
+        tolerance = other.tolerance;
+        patience = other.patience;
+        sweepEpisodes = other.sweepEpisodes;
+        replayCapacity = other.replayCapacity;
+        replayBatchSize = other.replayBatchSize;
+        prioritizedReplay = other.prioritizedReplay;
+        qTableType = other.qTableType;
+        qTableMemory = other.qTableMemory;
+    }
+
+    // Getters and Setters
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public void setAlpha(double alpha) {
+        this.alpha = alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public void setGamma(double gamma) {
+        this.gamma = gamma;
+    }
+
+    public double getMaxEpsilon() {
+        return maxEpsilon;
+    }
+
+    public void setMaxEpsilon(double maxEpsilon) {
+        this.maxEpsilon = maxEpsilon;
+    }
+
+    public double getMinEpsilon() {
+        return minEpsilon;
+    }
+
+    public void setMinEpsilon(double minEpsilon) {
+        this.minEpsilon = minEpsilon;
+    }
+
+    public double getDecayRate() {
+        return decayRate;
+    }
+
+    public void setDecayRate(double decayRate) {
+        this.decayRate = decayRate;
+    }
+
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    public void setEpisodes(int episodes) {
+        this.episodes = episodes;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public void setPatience(int patience) {
+        this.patience = patience;
+    }
+
+    public int getSweepEpisodes() {
+        return sweepEpisodes;
+    }
+
+    public void setSweepEpisodes(int sweepEpisodes) {
+        this.sweepEpisodes = sweepEpisodes;
+    }
+
+    public int getReplayCapacity() {
+        return replayCapacity;
+    }
+
+    public void setReplayCapacity(int replayCapacity) {
+        this.replayCapacity = replayCapacity;
+    }
+
+    public int getReplayBatchSize() {
+        return replayBatchSize;
+    }
+
+    public void setReplayBatchSize(int replayBatchSize) {
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    public boolean isPrioritizedReplay() {
+        return prioritizedReplay;
+    }
+
+    public void setPrioritizedReplay(boolean prioritizedReplay) {
+        this.prioritizedReplay = prioritizedReplay;
+    }
+
+    public QTableType getQTableType() {
+        return qTableType;
+    }
+
+    public void setQTableType(QTableType qTableType) {
+        this.qTableType = qTableType;
+    }
+
+    public long getQTableMemory() {
+        return qTableMemory;
+    }
+
+    public void setQTableMemory(long qTableMemory) {
+        this.qTableMemory = qTableMemory;
+    }
+
+    @Override
+    public String toString() {
+        return "alpha=" + alpha + ", gamma=" + gamma + ", maxEpsilon=" + maxEpsilon + ", minEpsilon=" + minEpsilon
+                + ", decayRate=" + decayRate + ", episodes=" + episodes + ", tolerance=" + tolerance
+                + ", patience=" + patience + ", sweepEpisodes=" + sweepEpisodes + ", replayCapacity=" + replayCapacity
+                + ", replayBatchSize=" + replayBatchSize + ", prioritizedReplay=" + prioritizedReplay
+                + ", qTableType=" + qTableType.getName() + ", qTableMemory=" + qTableMemory;
+    }
+}
@@ -1,4 +1,8 @@
 import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
 
 /**
  * Main class
@@ -6,14 +10,27 @@ import javax.swing.*;
  * @author Harshal
  */
 public class Main {
+
+    // Milliseconds between two checkpoints
+    private static final long CHECKPOINT_PERIOD = 30000;
+
     public static void main(String[] args) {
+        // With arguments, or without a display, train from the command line instead
+        if (args.length > 0 || GraphicsEnvironment.isHeadless()) {
+            Headless.main(args);
+            return;
+        }
+
         JFrame frame = new JFrame();
 
-        // GUI for the user to choose gridSize
-        String[] grids = new String[2];
-        grids[0] = "4";
-        grids[1] = "6";
-        int gridSize = Integer.parseInt(JOptionPane.showInputDialog(null, "Choose a grid size:", "Grid Size", JOptionPane.QUESTION_MESSAGE, null, grids, "4").toString());
+        // GUI for the user to choose the grid size, either a single size like 6 or rows x cols like 20x40
+        Object input = JOptionPane.showInputDialog(null, "Choose a grid size (rows x cols):", "Grid Size", JOptionPane.QUESTION_MESSAGE, null, null, "6x6");
+        if (input == null) {
+            return;
+        }
+        String[] size = input.toString().toLowerCase().split("x");
+        int rows = Integer.parseInt(size[0].trim());
+        int cols = size.length > 1 ? Integer.parseInt(size[1].trim()) : rows;
 
         // Set the title of the game
         frame.setTitle("Machine Learning: Q-Learning Algorithm Simulation");
@@ -26,8 +43,27 @@ public class Main {
 
         // Add the game to the game frame and ensure that the window is sized properly
         // to fit the preferred size and its subcomponents.
-        Game game = new Game(gridSize);
+        // The same seed, given with -Dseed=number, always gives the same map and training
+        long seed = Long.getLong("seed", new SplittableRandom().nextLong());
+        System.out.println("Seed: " + seed);
+        Game game = new Game(rows, cols, new Hyperparameters(), seed);
         frame.add(game);
+
+        // Continue from and keep saving to a checkpoint when one is given with -Dcheckpoint=file
+        String checkpoint = System.getProperty("checkpoint");
+        if (checkpoint != null) {
+            game.setCheckpoint(Paths.get(checkpoint), CHECKPOINT_PERIOD);
+        }
+
+        // Answer policy queries on localhost when a port is given with -Dserve=port
+        String serve = System.getProperty("serve");
+        if (serve != null) {
+            try {
+                game.setPolicyServer(Integer.parseInt(serve));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         frame.pack();
 
         // Spawn the game frame in the middle of the computer screen
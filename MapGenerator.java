@@ -0,0 +1,280 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MapGenerator class: Generates the random maps of the simulation into an engine. The finish node is fixed at
+ * (rows - 1, cols - 1) and the agent starts from the engine's start cell.
+ * <p>
+ * Every generated map is solvable: first a random path of right and down moves is laid from the start to the
+ * finish node, and then the holes are placed on the other cells only. The holes are drawn with Floyd's sampling
+ * algorithm over the numbered free cells, so placing n holes takes n random numbers no matter how dense the map
+ * gets. Large maps are split into tiles of TILE_CELLS cells, each filled by its own stream of the random on its own
+ * thread. The tiles only depend on the size of the map, so a seed gives the same map with any number of threads.
+ *
+ * @author Harshal
+ */
+public class MapGenerator {
+
+    // Cells of a tile, a multiple of 64 so no two tiles share a word of the engine's hole bit plane
+    private static final int TILE_CELLS = 1 << 20;
+
+    /**
+     * generate method puts the finish node and the holes on a new map of the engine, with as many holes as half
+     * the average number of rows and cols plus 1. The map can be any size and does not have to be square.
+     *
+     * @param engine
+     * @param random
+     */
+    public static void generate(Engine engine, SplittableRandom random) {
+        long holes = (engine.getRows() + engine.getCols()) / 4 + 1;
+        generate(engine, holes, 1, random, true);
+    }
+
+    /**
+     * generate method puts the finish node and exactly the given number of holes on a new map of the engine.
+     *
+     * @param engine
+     * @param holes
+     * @param threads
+     * @param random
+     */
+    public static void generate(Engine engine, long holes, int threads, SplittableRandom random) {
+        generate(engine, holes, threads, random, false);
+    }
+
+    /**
+     * generateDensity method puts the finish node on a new map of the engine and holes on the given fraction of the
+     * cells off the protected path.
+     *
+     * @param engine
+     * @param density
+     * @param threads
+     * @param random
+     */
+    public static void generateDensity(Engine engine, double density, int threads, SplittableRandom random) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("density must be between 0 and 1 but was " + density);
+        }
+        Layout layout = new Layout(engine, random);
+        layout.place(Math.round(density * layout.total), threads, random);
+    }
+
+    /**
+     * generate method lays the path and places the holes.
+     *
+     * @param engine
+     * @param holes
+     * @param threads
+     * @param random
+     * @param capped - whether to place fewer holes on maps too small for all of them
+     */
+    private static void generate(Engine engine, long holes, int threads, SplittableRandom random, boolean capped) {
+        Layout layout = new Layout(engine, random);
+        if (holes > layout.total) {
+            if (!capped) {
+                throw new IllegalArgumentException(holes + " holes do not fit next to the path, a " + engine.getRows()
+                        + "x" + engine.getCols() + " map only has room for " + layout.total);
+            }
+            holes = layout.total;
+        }
+        layout.place(holes, threads, random);
+    }
+
+    /**
+     * isSolvable method checks with a breadth first search over the cells that are not holes whether the finish
+     * node can be reached from the start without falling into a hole. It works on any map, generated or loaded.
+     *
+     * @param engine
+     * @return boolean
+     */
+    public static boolean isSolvable(Engine engine) {
+        int cells = engine.getCellCount();
+        int start = engine.getStart();
+        long[] visited = new long[(cells + 63) >>> 6];
+        int[] queue = new int[cells];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start >>> 6] |= 1L << start;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (engine.getCellType(cell / engine.getCols(), cell % engine.getCols()) == Engine.FINISH) {
+                return true;
+            }
+            int[] actions = engine.getAction(cell);
+            for (int i = 0; i < actions.length; i++) {
+                int next = engine.getNeighbour(cell, actions[i]);
+                if ((visited[next >>> 6] & (1L << next)) == 0 && !engine.isHole(next)) {
+                    visited[next >>> 6] |= 1L << next;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Layout class: The protected path of a map and the numbering of the free cells around it. The path moves
+     * right and down only, so it covers one run of cols [pathFrom, pathTo] in every row it passes, and the free
+     * cells of a row are the cols left and right of that run. Free cells are numbered row by row, rowStart holds the
+     * number of the first free cell of every row.
+     */
+    private static class Layout {
+
+        private final Engine engine;
+        private final int rows;
+        private final int cols;
+        private final int[] pathFrom;
+        private final int[] pathTo;
+        private final long[] rowStart;
+        private final long total;
+
+        /**
+         * Layout constructor: puts the finish node on the map and lays a random path to it from the start. Every
+         * path of right and down moves is equally likely.
+         */
+        Layout(Engine engine, SplittableRandom random) {
+            this.engine = engine;
+            rows = engine.getRows();
+            cols = engine.getCols();
+            int finish = engine.index(rows - 1, cols - 1);
+            engine.setCellType(finish, Engine.FINISH);
+
+            pathFrom = new int[rows];
+            pathTo = new int[rows];
+            int row = engine.getStart() / cols;
+            int col = engine.getStart() % cols;
+            for (int r = 0; r < rows; r++) {
+                // Rows the path does not pass have an empty run
+                pathFrom[r] = cols;
+                pathTo[r] = cols - 1;
+            }
+            pathFrom[row] = col;
+            int downs = rows - 1 - row;
+            int rights = cols - 1 - col;
+            while (downs + rights > 0) {
+                if (random.nextInt(downs + rights) < downs) {
+                    pathTo[row] = col;
+                    row++;
+                    downs--;
+                    pathFrom[row] = col;
+                } else {
+                    col++;
+                    rights--;
+                }
+            }
+            pathTo[row] = col;
+
+            rowStart = new long[rows + 1];
+            for (int r = 0; r < rows; r++) {
+                rowStart[r + 1] = rowStart[r] + cols - (pathTo[r] - pathFrom[r] + 1);
+            }
+            total = rowStart[rows];
+        }
+
+        /**
+         * freeBefore method returns the number of free cells with an index below the given one.
+         */
+        long freeBefore(int index) {
+            if (index >= rows * cols) {
+                return total;
+            }
+            int row = index / cols;
+            int col = index % cols;
+            int path = Math.max(0, Math.min(col, pathTo[row] + 1) - pathFrom[row]);
+            return rowStart[row] + col - path;
+        }
+
+        /**
+         * cellAt method returns the index of the free cell with the given number.
+         */
+        int cellAt(long number) {
+            // Last row whose first free cell is not after the number
+            int low = 0;
+            int high = rows - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (rowStart[middle] <= number) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            int col = (int) (number - rowStart[low]);
+            if (col >= pathFrom[low]) {
+                col += pathTo[low] - pathFrom[low] + 1;
+            }
+            return low * cols + col;
+        }
+
+        /**
+         * place method spreads the holes over the tiles in proportion to their free cells and fills the tiles,
+         * on several threads if there is more than one tile.
+         */
+        void place(long holes, int threads, SplittableRandom random) {
+            int cells = rows * cols;
+            int tiles = (int) (((long) cells + TILE_CELLS - 1) / TILE_CELLS);
+            List<Callable<Void>> tasks = new ArrayList<>(tiles);
+            for (int tile = 0; tile < tiles; tile++) {
+                long first = freeBefore((int) Math.min((long) tile * TILE_CELLS, cells));
+                long end = freeBefore((int) Math.min((long) (tile + 1) * TILE_CELLS, cells));
+                // Rounded down shares of all tiles up to this one, so the shares add up to exactly the holes
+                long count = total == 0 ? 0 : holes * end / total - holes * first / total;
+                // Every tile gets its own stream, split in order so the map does not depend on the threads
+                SplittableRandom tileRandom = tiles == 1 ? random : random.split();
+                tasks.add(() -> {
+                    fill(first, end - first, count, tileRandom);
+                    return null;
+                });
+            }
+
+            if (threads <= 1 || tiles == 1) {
+                for (Callable<Void> task : tasks) {
+                    try {
+                        task.call();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Map generation failed", e);
+                    }
+                }
+                return;
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tiles), runnable -> {
+                Thread thread = new Thread(runnable, "map-generator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Map generation failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * fill method places count holes on the free cells numbered from first on with Floyd's algorithm: for
+         * every j of the last count numbers it draws a number up to j, and takes j itself if the drawn one is a
+         * hole already. Every set of count cells is equally likely.
+         */
+        void fill(long first, long free, long count, SplittableRandom random) {
+            for (long j = free - count; j < free; j++) {
+                int cell = cellAt(first + random.nextLong(j + 1));
+                if (engine.isHole(cell)) {
+                    cell = cellAt(first + j);
+                }
+                engine.setCellType(cell, Engine.HOLE);
+            }
+        }
+    }
+}
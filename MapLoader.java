@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * MapLoader class: Loads map files into an engine. The files are read through memory mapped regions a byte at a
+ * time, so even maps of hundreds of megabytes are parsed without ever holding their lines as strings. Two formats
+ * are supported, told apart by the first bytes of the file.
+ * <p>
+ * ASCII maps: every line of the file is a row of the map and every character a cell:
+ * <ul>
+ *     <li>'.' idle cell</li>
+ *     <li>'#' or 'H' hole</li>
+ *     <li>'S' start, where the agent spawns (at most one, (0, 0) when there is none)</li>
+ *     <li>'G' or 'F' finish</li>
+ * </ul>
+ * Binary PGM (P5) rasters, one pixel per cell, as exported by most CAD and image tools:
+ * <ul>
+ *     <li>64 start and 192 finish</li>
+ *     <li>any other value below 128 (0 for a clean export) hole</li>
+ *     <li>any other value from 128 up (255 for a clean export) idle</li>
+ * </ul>
+ * Rasters with a maximum value other than 255 are scaled to 0 - 255 first.
+ *
+ * @author Harshal
+ */
+public class MapLoader {
+
+    // Size of the regions of the file mapped at a time
+    private static final long MAP_CHUNK = 1L << 30;
+
+    // Grey levels of the start and finish pixels in a raster, darker pixels are holes
+    static final int PGM_START = 64;
+    static final int PGM_FINISH = 192;
+    static final int PGM_HOLE_BELOW = 128;
+
+    /**
+     * load method reads an ASCII or PGM map file and returns an engine with that map.
+     *
+     * @param path
+     * @param hyperparameters
+     * @param random
+     * @return Engine
+     * @throws IOException
+     */
+    public static Engine load(Path path, Hyperparameters hyperparameters, SplittableRandom random) throws IOException {
+        try (MappedInput input = new MappedInput(path)) {
+            if (input.peek(0) == 'P' && input.peek(1) == '5') {
+                return loadPgm(input, path, hyperparameters, random);
+            }
+            return loadAscii(input, path, hyperparameters, random);
+        }
+    }
+
+    /**
+     * loadAscii method reads an ASCII map in two passes over the mapped file: the first one measures the map and
+     * checks that every row has the same length, the second one puts the cells into the engine. Empty lines and
+     * carriage returns are skipped.
+     *
+     * @param input
+     * @param path
+     * @param hyperparameters
+     * @param random
+     * @return Engine
+     * @throws IOException
+     */
+    private static Engine loadAscii(MappedInput input, Path path, Hyperparameters hyperparameters,
+                                    SplittableRandom random) throws IOException {
+        int rows = 0;
+        int cols = -1;
+        int col = 0;
+        for (int cell = input.read(); cell >= 0; cell = input.read()) {
+            if (cell == '\n') {
+                if (col > 0) {
+                    if (cols < 0) {
+                        cols = col;
+                    } else if (col != cols) {
+                        throw new IOException(path + ": row " + rows + " has " + col + " cells instead of " + cols);
+                    }
+                    rows++;
+                    col = 0;
+                }
+            } else if (cell != '\r') {
+                col++;
+            }
+        }
+        if (col > 0) {
+            // Last line without a line break
+            if (cols >= 0 && col != cols) {
+                throw new IOException(path + ": row " + rows + " has " + col + " cells instead of " + cols);
+            }
+            cols = col;
+            rows++;
+        }
+        if (rows == 0) {
+            throw new IOException(path + " does not contain a map");
+        }
+
+        Engine engine = newEngine(rows, cols, path, hyperparameters, random);
+        boolean[] started = new boolean[1];
+        input.rewind();
+        int row = 0;
+        col = 0;
+        for (int cell = input.read(); cell >= 0; cell = input.read()) {
+            if (cell == '\n') {
+                if (col > 0) {
+                    row++;
+                    col = 0;
+                }
+            } else if (cell != '\r') {
+                setCell(engine, row, col++, cell, started, path);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * loadPgm method reads a binary PGM raster: the header "P5 width height maxval" (with optional # comments)
+     * followed by one byte per pixel, row by row.
+     *
+     * @param input
+     * @param path
+     * @param hyperparameters
+     * @param random
+     * @return Engine
+     * @throws IOException
+     */
+    private static Engine loadPgm(MappedInput input, Path path, Hyperparameters hyperparameters,
+                                  SplittableRandom random) throws IOException {
+        input.read();
+        input.read();
+        int cols = readHeaderNumber(input, path);
+        int rows = readHeaderNumber(input, path);
+        int maxValue = readHeaderNumber(input, path);
+        if (maxValue < 1 || maxValue > 255) {
+            throw new IOException(path + ": only 8 bit PGM rasters are supported, maxval is " + maxValue);
+        }
+        // A single whitespace character separates the header from the pixels
+        input.read();
+        if (input.remaining() < (long) rows * cols) {
+            throw new IOException(path + ": the raster has " + input.remaining() + " pixels instead of "
+                    + (long) rows * cols);
+        }
+
+        Engine engine = newEngine(rows, cols, path, hyperparameters, random);
+        boolean[] started = new boolean[1];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int grey = input.read();
+                if (maxValue != 255) {
+                    grey = grey * 255 / maxValue;
+                }
+                int cell;
+                if (grey == PGM_START) {
+                    cell = 'S';
+                } else if (grey == PGM_FINISH) {
+                    cell = 'F';
+                } else {
+                    cell = grey < PGM_HOLE_BELOW ? 'H' : '.';
+                }
+                setCell(engine, row, col, cell, started, path);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * readHeaderNumber method reads the next positive decimal number of a PGM header, skipping whitespace and
+     * comments.
+     *
+     * @param input
+     * @param path
+     * @return int
+     * @throws IOException
+     */
+    private static int readHeaderNumber(MappedInput input, Path path) throws IOException {
+        int cell = input.read();
+        while (cell == '#' || Character.isWhitespace(cell)) {
+            if (cell == '#') {
+                while (cell >= 0 && cell != '\n') {
+                    cell = input.read();
+                }
+            }
+            cell = input.read();
+        }
+        if (cell < '0' || cell > '9') {
+            throw new IOException(path + ": broken PGM header");
+        }
+        long number = 0;
+        while (cell >= '0' && cell <= '9') {
+            number = number * 10 + (cell - '0');
+            if (number > Integer.MAX_VALUE) {
+                throw new IOException(path + ": PGM header value too large");
+            }
+            cell = input.peek(0);
+            if (cell >= '0' && cell <= '9') {
+                input.read();
+            }
+        }
+        return (int) number;
+    }
+
+    /**
+     * newEngine method creates the engine of a map after checking the map fits into its arrays.
+     *
+     * @param rows
+     * @param cols
+     * @param path
+     * @param hyperparameters
+     * @param random
+     * @return Engine
+     * @throws IOException
+     */
+    private static Engine newEngine(int rows, int cols, Path path, Hyperparameters hyperparameters,
+                                    SplittableRandom random) throws IOException {
+        if (rows < 1 || cols < 1 || (long) rows * cols > Integer.MAX_VALUE - 8) {
+            throw new IOException(path + ": a " + rows + "x" + cols + " map is not supported");
+        }
+        return new Engine(rows, cols, hyperparameters, random);
+    }
+
+    /**
+     * setCell method puts the cell of a map character into the engine.
+     *
+     * @param engine
+     * @param row
+     * @param col
+     * @param cell
+     * @param started - whether a start has been read already
+     * @param path
+     * @throws IOException
+     */
+    static void setCell(Engine engine, int row, int col, int cell, boolean[] started, Path path) throws IOException {
+        switch (cell) {
+            case '.':
+                break;
+            case '#':
+            case 'H':
+                engine.setCellType(row, col, Engine.HOLE);
+                break;
+            case 'G':
+            case 'F':
+                engine.setCellType(row, col, Engine.FINISH);
+                break;
+            case 'S':
+                if (started[0]) {
+                    throw new IOException(path + ": second start at (" + row + ", " + col + ")");
+                }
+                started[0] = true;
+                engine.setStart(engine.index(row, col));
+                break;
+            default:
+                throw new IOException(path + ": unknown cell '" + (char) cell + "' at (" + row + ", " + col + ")");
+        }
+    }
+
+    /**
+     * MappedInput class: Reads a file a byte at a time through read only memory mapped regions of at most
+     * MAP_CHUNK bytes, mapping the next region when the current one is used up.
+     */
+    private static class MappedInput implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final long size;
+
+        // Current region and the file offset it starts at
+        private MappedByteBuffer region;
+        private long regionStart;
+
+        MappedInput(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            size = channel.size();
+            rewind();
+        }
+
+        /**
+         * read method returns the next byte of the file, or -1 at the end of the file.
+         */
+        int read() throws IOException {
+            if (!region.hasRemaining()) {
+                long next = regionStart + region.limit();
+                if (next >= size) {
+                    return -1;
+                }
+                map(next);
+            }
+            return region.get() & 0xFF;
+        }
+
+        /**
+         * peek method returns the byte ahead bytes after the next one without reading it, or -1 past the end.
+         */
+        int peek(int ahead) throws IOException {
+            long position = regionStart + region.position() + ahead;
+            if (position >= size) {
+                return -1;
+            }
+            if (position < regionStart + region.limit()) {
+                return region.get(region.position() + ahead) & 0xFF;
+            }
+            // Rare case of a header crossing a region border
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, 1).get(0) & 0xFF;
+        }
+
+        long remaining() {
+            return size - regionStart - region.position();
+        }
+
+        void rewind() throws IOException {
+            map(0);
+        }
+
+        private void map(long start) throws IOException {
+            regionStart = start;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_CHUNK, size - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelTrainer class: Trains an engine with several worker agents at the same time. All workers explore the
+ * same map and update the same Q-table without any lock (Hogwild style), the engine makes sure no update gets
+ * lost by writing every Q-value with a compare-and-set.
+ * <p>
+ * The random numbers of every worker only depend on the seed, but the order in which the workers' updates land
+ * depends on the thread scheduling, so only a single worker trains exactly the same way every run.
+ *
+ * @author Harshal
+ */
+public class ParallelTrainer {
+
+    // Engine holding the shared Q-table
+    private final Engine engine;
+
+    // Workers and the random stream of every worker, so the workers never share a random
+    private final int workers;
+    private final boolean shared;
+    private final SplittableRandom[] randoms;
+    private final ExecutorService executor;
+
+    // Number of episodes and Q-value updates done so far
+    private long episodes;
+    private long updates;
+
+    /**
+     * ParallelTrainer constructor: a single worker trains the way the engine does on its own.
+     *
+     * @param engine
+     * @param workers
+     * @param seed
+     */
+    public ParallelTrainer(Engine engine, int workers, long seed) {
+        this(engine, workers, seed, workers > 1);
+    }
+
+    /**
+     * ParallelTrainer constructor
+     *
+     * @param engine
+     * @param workers
+     * @param seed
+     * @param shared - whether the workers write with compare-and-set, which is required for more than one worker
+     *               and lets a single worker be compared with several on the same path
+     */
+    public ParallelTrainer(Engine engine, int workers, long seed, boolean shared) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1 but was " + workers);
+        }
+        if (workers > 1 && !shared) {
+            throw new IllegalArgumentException(workers + " workers have to share the Q-table");
+        }
+        if (shared && !engine.getQTable().isConcurrent()) {
+            throw new IllegalArgumentException("a " + engine.getQTable().getClass().getSimpleName()
+                    + " can only be trained on one thread");
+        }
+        this.engine = engine;
+        this.workers = workers;
+        this.shared = shared;
+
+        // Every worker gets its own independent stream split from the seed, so the same seed and number of workers
+        // always give every worker the same random numbers and the workers never contend on a random
+        SplittableRandom master = new SplittableRandom(seed);
+        randoms = new SplittableRandom[workers];
+        for (int i = 0; i < workers; i++) {
+            randoms[i] = master.split();
+        }
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "q-learning-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * qLearningAlgorithm method: Same as the engine's qLearningAlgorithm, except the episodes are split over
+     * the workers. Worker i runs the episodes i, i + workers, i + 2 * workers, ... so every worker follows the
+     * same epsilon decay.
+     *
+     * @param currentPos
+     * @return int - index of the next position to head to
+     */
+    public int qLearningAlgorithm(int currentPos) {
+        train(currentPos, engine.getEpisodes());
+        return engine.getMaxQIndex(currentPos);
+    }
+
+    /**
+     * train method trains the given number of episodes from the current position on all workers and waits for
+     * them to finish. Every worker stops early once the Q-table converged for it.
+     *
+     * @param currentPos
+     * @param episodes
+     * @return long - number of Q-value updates
+     */
+    public long train(int currentPos, int episodes) {
+        List<Callable<Integer>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            int worker = i;
+            tasks.add(() -> engine.train(currentPos, worker, episodes, workers, randoms[worker], shared));
+        }
+
+        long done = 0;
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                done += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training worker failed", e.getCause());
+        }
+        // The workers did not update the cached greedy policy while sharing the Q-table
+        if (shared) {
+            engine.rebuildPolicy();
+        }
+
+        // Every episode updates one Q-value per action of the current position
+        long doneUpdates = done * engine.getAction(currentPos).length;
+        this.episodes += done;
+        updates += doneUpdates;
+        return doneUpdates;
+    }
+
+    /**
+     * shutdown method stops the worker threads.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Getters
+    public int getWorkers() {
+        return workers;
+    }
+
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+}
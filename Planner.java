@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Planner class: Fills an engine's Q-table by planning on the known map instead of sampling episodes. The map is
+ * fully known and every move is deterministic, so the Q-table the training converges to is the fixed point of
+ * Bellman's equation, Q[cell] = reward[cell] + gamma * (highest Q-value of the neighbours), and we can solve for
+ * it directly:
+ * <ul>
+ *     <li>Value iteration updates every cell from the previous Q-table until nothing changes anymore. The cells
+ *     are split into row bands that are updated on several threads at the same time.</li>
+ *     <li>Prioritized sweeping always updates the cell whose Q-value is furthest from its Bellman value first and
+ *     then only rechecks the neighbours of that cell, so it only touches the cells that actually change.</li>
+ * </ul>
+ * The result is an ordinary Q-table, so the agent follows it with getMaxQIndex like a learnt one.
+ * <p>
+ * When a few cells of the map change, replan re-learns only what the change affects: it starts a prioritized
+ * sweep from the changed cells instead of from the whole map, so the changes spread outwards only as far as they
+ * still move a Q-value by more than the tolerance. This works on a learnt Q-table as well as on a planned one.
+ *
+ * @author Harshal
+ */
+public class Planner {
+
+    // A cell has converged when its Q-value is this close to its Bellman value, relative to the value. The value of
+    // the finish node shrinks by gamma with every cell of distance, so an absolute tolerance would stop planning
+    // before the value reaches the cells far away from the finish node.
+    private static final double PRECISION = 1e-12;
+
+    // Value iteration gives up after this many sweeps
+    private static final int MAX_ITERATIONS = 100_000;
+
+    // Engine holding the map and the Q-table
+    private final Engine engine;
+    private final Solver solver;
+
+    // Value iteration: threads sweeping the row bands and the Q-values of the next sweep
+    private final int threads;
+    private final ExecutorService executor;
+    private final double[] nextQValues;
+
+    // Prioritized sweeping and replanning: cells ordered by how far their Q-value is from their Bellman value,
+    // created on first use by value iteration planners
+    private IndexedHeap heap;
+
+    // Bellman updates and value iteration sweeps of the last plan and of all plans so far
+    private long lastUpdates;
+    private long updates;
+    private int lastIterations;
+
+    /**
+     * Planner constructor
+     *
+     * @param engine
+     * @param solver
+     * @param threads
+     */
+    public Planner(Engine engine, Solver solver, int threads) {
+        if (solver == Solver.Q_LEARNING) {
+            throw new IllegalArgumentException("Q-learning is not a planning solver");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        if (engine.getQTable().isCapped()) {
+            throw new IllegalArgumentException("a capped " + engine.getQTable().getClass().getSimpleName()
+                    + " evicts the Q-values it is planning, plan on a table without a memory cap");
+        }
+        this.engine = engine;
+        this.solver = solver;
+        this.threads = threads;
+
+        if (solver == Solver.VALUE_ITERATION) {
+            nextQValues = new double[engine.getCellCount()];
+            executor = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "value-iteration");
+                thread.setDaemon(true);
+                return thread;
+            }) : null;
+        } else {
+            nextQValues = null;
+            heap = new IndexedHeap(engine.getCellCount());
+            executor = null;
+        }
+    }
+
+    /**
+     * qLearningAlgorithm method: Same as the engine's qLearningAlgorithm, except the Q-table is planned instead of
+     * trained. The rewards change when the agent moves, so we plan again every time, starting from the Q-table of
+     * the last plan.
+     *
+     * @param currentPos
+     * @return int - index of the next position to head to
+     */
+    public int qLearningAlgorithm(int currentPos) {
+        plan();
+        return engine.getMaxQIndex(currentPos);
+    }
+
+    /**
+     * plan method updates the Q-table until every Q-value is within the precision of its Bellman value.
+     *
+     * @return long - number of Bellman updates
+     */
+    public long plan() {
+        lastUpdates = solver == Solver.VALUE_ITERATION ? valueIteration(MAX_ITERATIONS) : prioritizedSweeping();
+        updates += lastUpdates;
+        return lastUpdates;
+    }
+
+    /**
+     * iterate method runs at most the given number of value iteration sweeps over the Q-table, fewer only if it
+     * converges before. This only improves the Q-table a few cells around every cell instead of solving it.
+     *
+     * @param sweeps
+     * @return long - number of Bellman updates
+     */
+    public long iterate(int sweeps) {
+        if (solver != Solver.VALUE_ITERATION) {
+            throw new IllegalStateException(solver.getName() + " does not sweep the whole Q-table");
+        }
+        lastUpdates = valueIteration(sweeps);
+        updates += lastUpdates;
+        return lastUpdates;
+    }
+
+    /**
+     * valueIteration method computes the next Q-table from the current one for all cells at once, copies it back
+     * and repeats until no Q-value changes anymore or the maximum number of sweeps is reached.
+     *
+     * @param maxIterations
+     * @return long - number of Bellman updates
+     */
+    private long valueIteration(int maxIterations) {
+        int cells = engine.getCellCount();
+        int rows = engine.getRows();
+        int cols = engine.getCols();
+        int bands = Math.min(threads, rows);
+
+        // One task per band of rows, every task returns the number of cells that changed in its band
+        List<Callable<Integer>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int from = (int) ((long) rows * band / bands) * cols;
+            int to = (int) ((long) rows * (band + 1) / bands) * cols;
+            tasks.add(() -> sweep(from, to));
+        }
+
+        int iterations = 0;
+        long changed;
+        do {
+            changed = 0;
+            if (executor == null) {
+                changed = sweep(0, cells);
+            } else {
+                try {
+                    for (Future<Integer> future : executor.invokeAll(tasks)) {
+                        changed += future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Value iteration failed", e.getCause());
+                }
+            }
+            // Every band has been computed from the old Q-table, now the new one replaces it
+            for (int i = 0; i < cells; i++) {
+                engine.setQValue(i, nextQValues[i]);
+            }
+            iterations++;
+        } while (changed > 0 && iterations < maxIterations);
+
+        lastIterations = iterations;
+        return (long) iterations * cells;
+    }
+
+    /**
+     * sweep method computes the Bellman value of the cells from up to (but not including) to.
+     *
+     * @param from
+     * @param to
+     * @return int - number of cells that have not converged yet
+     */
+    private int sweep(int from, int to) {
+        int changed = 0;
+        for (int i = from; i < to; i++) {
+            double value = engine.bellmanValue(i);
+            nextQValues[i] = value;
+            if (!converged(value, engine.getQValue(i), 0)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * prioritizedSweeping method queues every cell that is not within the precision of its Bellman value, and then
+     * sweeps the queue.
+     *
+     * @return long - number of Bellman updates
+     */
+    private long prioritizedSweeping() {
+        heap.clear();
+        for (int i = 0; i < engine.getCellCount(); i++) {
+            check(i, 0);
+        }
+        lastIterations = 0;
+        return sweepQueue(0);
+    }
+
+    /**
+     * replan method re-learns the Q-table after the given cells of the map changed (a hole toggled or the finish
+     * node moved), starting from the current Q-table. Only the changed cells and their neighbours are queued at
+     * first, and from then on only the neighbours of updated cells are checked, and queued if their Bellman error is
+     * above the tolerance. The work depends on how far the change spreads and not on the size of the map.
+     *
+     * @param tolerance - Bellman errors up to this are left alone, 0 re-learns down to the precision
+     * @param cells
+     * @return long - number of Bellman updates
+     */
+    public long replan(double tolerance, int... cells) {
+        if (heap == null) {
+            heap = new IndexedHeap(engine.getCellCount());
+        }
+        heap.clear();
+        for (int cell : cells) {
+            check(cell, tolerance);
+            int[] actions = engine.getAction(cell);
+            for (int i = 0; i < actions.length; i++) {
+                check(engine.getNeighbour(cell, actions[i]), tolerance);
+            }
+        }
+        lastUpdates = sweepQueue(tolerance);
+        updates += lastUpdates;
+        lastIterations = 0;
+        return lastUpdates;
+    }
+
+    /**
+     * sweepQueue method keeps updating the queued cell with the largest error until the queue is empty. Updating
+     * a cell can only change the Bellman value of its neighbours, so only those are checked again.
+     *
+     * @param tolerance
+     * @return long - number of Bellman updates
+     */
+    private long sweepQueue(double tolerance) {
+        long done = 0;
+        while (!heap.isEmpty()) {
+            int cell = heap.poll();
+            engine.setQValue(cell, engine.bellmanValue(cell));
+            done++;
+
+            // The moves are the same in both directions, so the cells that can move here are the neighbours
+            int[] actions = engine.getAction(cell);
+            for (int i = 0; i < actions.length; i++) {
+                check(engine.getNeighbour(cell, actions[i]), tolerance);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * check method queues a cell with its Bellman error as priority when it has not converged, and takes it out
+     * of the queue otherwise.
+     *
+     * @param cell
+     * @param tolerance
+     */
+    private void check(int cell, double tolerance) {
+        double value = engine.bellmanValue(cell);
+        double qValue = engine.getQValue(cell);
+        if (converged(value, qValue, tolerance)) {
+            heap.remove(cell);
+        } else {
+            heap.put(cell, Math.abs(value - qValue));
+        }
+    }
+
+    /**
+     * converged method checks whether a Q-value is within the tolerance or the precision of its Bellman value.
+     *
+     * @param value
+     * @param qValue
+     * @param tolerance
+     * @return boolean
+     */
+    private static boolean converged(double value, double qValue, double tolerance) {
+        double error = Math.abs(value - qValue);
+        return error <= tolerance || error <= PRECISION * Math.max(Math.abs(value), Math.abs(qValue));
+    }
+
+    /**
+     * shutdown method stops the value iteration threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // Getters
+    public Solver getSolver() {
+        return solver;
+    }
+
+    public long getLastUpdates() {
+        return lastUpdates;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * IndexedHeap class: A binary max-heap of cells by priority that also knows where every cell is in the heap,
+     * so the priority of a queued cell can be changed in O(log n) without any duplicates. Everything is kept in
+     * primitive arrays.
+     */
+    private static class IndexedHeap {
+
+        // Cells in heap order, the heap position of every cell (-1 if not queued) and the priority of every cell
+        private final int[] cells;
+        private final int[] positions;
+        private final double[] priorities;
+        private int size;
+
+        IndexedHeap(int capacity) {
+            cells = new int[capacity];
+            positions = new int[capacity];
+            priorities = new double[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                positions[cells[i]] = -1;
+            }
+            size = 0;
+        }
+
+        /**
+         * put method queues a cell or changes the priority of a queued cell.
+         */
+        void put(int cell, double priority) {
+            int position = positions[cell];
+            if (position < 0) {
+                position = size++;
+                cells[position] = cell;
+                positions[cell] = position;
+                priorities[cell] = priority;
+                up(position);
+            } else {
+                double old = priorities[cell];
+                priorities[cell] = priority;
+                if (priority > old) {
+                    up(position);
+                } else {
+                    down(position);
+                }
+            }
+        }
+
+        /**
+         * poll method takes the cell with the highest priority out of the heap.
+         */
+        int poll() {
+            int cell = cells[0];
+            removeAt(0);
+            return cell;
+        }
+
+        /**
+         * remove method takes a cell out of the heap if it is queued.
+         */
+        void remove(int cell) {
+            if (positions[cell] >= 0) {
+                removeAt(positions[cell]);
+            }
+        }
+
+        private void removeAt(int position) {
+            positions[cells[position]] = -1;
+            size--;
+            if (position == size) {
+                return;
+            }
+            // Move the last cell into the gap and restore the heap order
+            int moved = cells[size];
+            cells[position] = moved;
+            positions[moved] = position;
+            up(position);
+            down(positions[moved]);
+        }
+
+        private void up(int position) {
+            int cell = cells[position];
+            while (position > 0) {
+                int parent = (position - 1) >> 1;
+                if (priorities[cells[parent]] >= priorities[cell]) {
+                    break;
+                }
+                cells[position] = cells[parent];
+                positions[cells[position]] = position;
+                position = parent;
+            }
+            cells[position] = cell;
+            positions[cell] = position;
+        }
+
+        private void down(int position) {
+            int cell = cells[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && priorities[cells[child + 1]] > priorities[cells[child]]) {
+                    child++;
+                }
+                if (priorities[cells[child]] <= priorities[cell]) {
+                    break;
+                }
+                cells[position] = cells[child];
+                positions[cells[position]] = position;
+                position = child;
+            }
+            cells[position] = cell;
+            positions[cell] = position;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Policy class: An immutable copy of the greedy policy the engine has learnt: the best move of every cell and the
+ * cell types. The training thread publishes policies and any number of other threads can follow them at the
+ * same time without any lock, while the training continues on the engine.
+ * <p>
+ * The cells are kept in chunks of 2^Engine.CHUNK_SHIFT cells, which the next policy of the engine shares as long as
+ * they did not change, the same way snapshots do.
+ *
+ * @author Harshal
+ */
+public class Policy {
+
+    // Best move of a cell where no neighbour has a Q-value above -1000
+    public static final byte NO_MOVE = -1;
+
+    // Rows and cols of the map
+    private final int rows;
+    private final int cols;
+
+    // Copies of the best move (an Action's integer equivalent or NO_MOVE) and the type of every cell in chunks
+    private final byte[][] bestMoves;
+    private final byte[][] cellTypes;
+
+    // Episodes trained when the policy was taken
+    private final long episodes;
+
+    // Version of the engine the policy was taken at
+    private final int version;
+
+    /**
+     * Policy constructor: the chunks are owned by the policy (and the later policies sharing them) from now on and
+     * must not be changed anymore.
+     *
+     * @param rows
+     * @param cols
+     * @param bestMoves
+     * @param cellTypes
+     * @param episodes
+     * @param version - version of the engine it was taken at
+     */
+    public Policy(int rows, int cols, byte[][] bestMoves, byte[][] cellTypes, long episodes, int version) {
+        this.rows = rows;
+        this.cols = cols;
+        this.bestMoves = bestMoves;
+        this.cellTypes = cellTypes;
+        this.episodes = episodes;
+        this.version = version;
+    }
+
+    /**
+     * contains method checks whether a row and col are on the map.
+     *
+     * @param row
+     * @param col
+     * @return boolean
+     */
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * getAction method returns the action the agent takes on a cell, or null if no neighbour is worth a move.
+     *
+     * @param index
+     * @return Action
+     */
+    public Action getAction(int index) {
+        byte bestMove = getBestMove(index);
+        if (bestMove == NO_MOVE) {
+            return null;
+        }
+        for (Action action : Action.values()) {
+            if (action.getIntEquivalent() == bestMove) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * getNext method returns the cell the agent moves to from a cell, the same way the engine's getMaxQIndex does,
+     * or NO_MOVE if no neighbour is worth a move (where the engine falls back to cell 0).
+     *
+     * @param index
+     * @return int
+     */
+    public int getNext(int index) {
+        byte bestMove = getBestMove(index);
+        if (bestMove == NO_MOVE) {
+            return NO_MOVE;
+        }
+        if (bestMove == Action.UP.getIntEquivalent()) {
+            return index - cols;
+        } else if (bestMove == Action.DOWN.getIntEquivalent()) {
+            return index + cols;
+        } else if (bestMove == Action.LEFT.getIntEquivalent()) {
+            return index - 1;
+        }
+        return index + 1;
+    }
+
+    /**
+     * path method follows the policy from a cell until the finish node. The path holds every cell after the
+     * first one, it is null if the walk reaches a cell without a move or runs in a loop. Every cell has one move,
+     * so a walk that does not end comes back to a cell it visited before; it is compared with the cell it was on
+     * after the last power of two moves, which finds the loop within about twice its length plus the moves before
+     * it, without remembering the visited cells.
+     *
+     * @param index
+     * @return int[]
+     */
+    public int[] path(int index) {
+        int[] path = new int[16];
+        int length = 0;
+        int current = index;
+        int mark = index;
+        for (int moves = 1; ; moves++) {
+            current = getNext(current);
+            if (current == NO_MOVE || current == mark) {
+                return null;
+            }
+            if (length == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[length++] = current;
+            if (getCellType(current) == Engine.FINISH) {
+                return Arrays.copyOf(path, length);
+            }
+            // Remember the cell reached after every power of two moves
+            if ((moves & (moves - 1)) == 0) {
+                mark = current;
+            }
+        }
+    }
+
+    // Getters
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public byte getCellType(int index) {
+        return cellTypes[index >>> Engine.CHUNK_SHIFT][index & ((1 << Engine.CHUNK_SHIFT) - 1)];
+    }
+
+    public byte getBestMove(int index) {
+        return bestMoves[index >>> Engine.CHUNK_SHIFT][index & ((1 << Engine.CHUNK_SHIFT) - 1)];
+    }
+
+    byte[] getBestMoveChunk(int chunk) {
+        return bestMoves[chunk];
+    }
+
+    byte[] getCellTypeChunk(int chunk) {
+        return cellTypes[chunk];
+    }
+
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
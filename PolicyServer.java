@@ -0,0 +1,318 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PolicyServer class: A small HTTP server on the loopback interface answering questions about the latest
+ * published policy, while the training keeps going. Every request reads the volatile policy once and then only
+ * works on that immutable copy, so there are no locks between the server and the training.
+ * <p>
+ * Endpoints (rows and cols start at 0, answers are JSON):
+ * <pre>
+ *   GET  /action?row=R&amp;col=C          next action and cell from (R, C)
+ *   GET  /path?row=R&amp;col=C            whole path from (R, C) to the finish node
+ *   POST /batch?query=action|path     one "R C" pair per line, one JSON answer per line
+ * </pre>
+ * Requests run on virtual threads when the JVM has them (Java 21 and newer) and on a cached thread pool
+ * otherwise.
+ *
+ * @author Harshal
+ */
+public class PolicyServer {
+
+    // The HTTP server and the threads running its requests
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Latest published policy
+    private volatile Policy policy;
+
+    // Number of queries answered, batched queries count one by one
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * PolicyServer constructor: binds the server to the port on the loopback interface. Port 0 picks a free port.
+     *
+     * @param port
+     * @param policy
+     * @throws IOException
+     */
+    public PolicyServer(int port, Policy policy) throws IOException {
+        this.policy = policy;
+        // The answers are small, without TCP_NODELAY every answer waits for the client's delayed acknowledgement
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/action", exchange -> handle(exchange, false));
+        server.createContext("/path", exchange -> handle(exchange, true));
+        server.createContext("/batch", this::handleBatch);
+    }
+
+    /**
+     * newExecutor method returns an executor starting a virtual thread per task if the JVM supports them, and a
+     * cached pool of daemon threads otherwise. Virtual threads are looked up by reflection so the project still
+     * compiles and runs on older JVMs.
+     *
+     * @return ExecutorService
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "policy-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * start method starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * stop method stops the server and its threads.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * publish method replaces the policy the server answers with. Requests that are running keep the policy they
+     * started with.
+     *
+     * @param policy
+     */
+    public void publish(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * handle method answers a single /action or /path query.
+     *
+     * @param exchange
+     * @param path
+     * @throws IOException
+     */
+    private void handle(HttpExchange exchange, boolean path) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, "{\"error\": \"use GET with row and col parameters\"}");
+            return;
+        }
+        Policy current = policy;
+        String query = exchange.getRequestURI().getRawQuery();
+        int row = getParameter(query, "row");
+        int col = getParameter(query, "col");
+        if (row == Integer.MIN_VALUE || col == Integer.MIN_VALUE || !current.contains(row, col)) {
+            send(exchange, 400, "{\"error\": \"row and col must be a cell of the " + current.getRows() + "x"
+                    + current.getCols() + " map\"}");
+            return;
+        }
+        queries.increment();
+        StringBuilder answer = new StringBuilder();
+        if (path) {
+            appendPath(answer, current, row, col);
+        } else {
+            appendAction(answer, current, row, col);
+        }
+        send(exchange, 200, answer.toString());
+    }
+
+    /**
+     * handleBatch method answers one query per line of the request body, all of them with the same policy.
+     *
+     * @param exchange
+     * @throws IOException
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, "{\"error\": \"use POST with one row and col per line\"}");
+            return;
+        }
+        Policy current = policy;
+        String query = exchange.getRequestURI().getRawQuery();
+        boolean path = query != null && query.contains("query=path");
+
+        StringBuilder answer = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] cell = line.split("[\\s,]+");
+                int row;
+                int col;
+                try {
+                    row = Integer.parseInt(cell[0]);
+                    col = cell.length > 1 ? Integer.parseInt(cell[1]) : Integer.MIN_VALUE;
+                } catch (NumberFormatException e) {
+                    row = Integer.MIN_VALUE;
+                    col = Integer.MIN_VALUE;
+                }
+                if (!current.contains(row, col)) {
+                    answer.append("{\"error\": \"not a cell: ");
+                    appendEscaped(answer, line);
+                    answer.append("\"}\n");
+                    continue;
+                }
+                queries.increment();
+                if (path) {
+                    appendPath(answer, current, row, col);
+                } else {
+                    appendAction(answer, current, row, col);
+                }
+                answer.append('\n');
+            }
+        }
+        send(exchange, 200, answer.toString());
+    }
+
+    /**
+     * appendAction method writes the next action and cell of the agent from a cell as JSON.
+     *
+     * @param answer
+     * @param policy
+     * @param row
+     * @param col
+     */
+    private static void appendAction(StringBuilder answer, Policy policy, int row, int col) {
+        int index = row * policy.getCols() + col;
+        Action action = policy.getAction(index);
+        int next = policy.getNext(index);
+        answer.append("{\"row\": ").append(row).append(", \"col\": ").append(col).append(", \"action\": ")
+                .append(action == null ? "null" : "\"" + action + "\"");
+        // Without a move the agent has no next cell
+        if (next == Policy.NO_MOVE) {
+            answer.append(", \"nextRow\": null, \"nextCol\": null}");
+        } else {
+            answer.append(", \"nextRow\": ").append(next / policy.getCols())
+                    .append(", \"nextCol\": ").append(next % policy.getCols()).append('}');
+        }
+    }
+
+    /**
+     * appendPath method writes the path of the agent from a cell to the finish node as JSON.
+     *
+     * @param answer
+     * @param policy
+     * @param row
+     * @param col
+     */
+    private static void appendPath(StringBuilder answer, Policy policy, int row, int col) {
+        int[] path = policy.path(row * policy.getCols() + col);
+        answer.append("{\"row\": ").append(row).append(", \"col\": ").append(col)
+                .append(", \"reachesGoal\": ").append(path != null)
+                .append(", \"length\": ").append(path == null ? -1 : path.length).append(", \"path\": [");
+        if (path != null) {
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    answer.append(", ");
+                }
+                answer.append('[').append(path[i] / policy.getCols()).append(", ")
+                        .append(path[i] % policy.getCols()).append(']');
+            }
+        }
+        answer.append("]}");
+    }
+
+    /**
+     * appendEscaped method writes text into a JSON string, escaping the quotes, the backslashes and the control
+     * characters.
+     *
+     * @param answer
+     * @param text
+     */
+    private static void appendEscaped(StringBuilder answer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                answer.append('\\').append(c);
+            } else if (c < 0x20) {
+                answer.append(String.format("\\u%04x", (int) c));
+            } else {
+                answer.append(c);
+            }
+        }
+    }
+
+    /**
+     * getParameter method reads an integer parameter from a query string, or returns Integer.MIN_VALUE if it is
+     * missing or not a number.
+     *
+     * @param query
+     * @param name
+     * @return int
+     */
+    private static int getParameter(String query, String name) {
+        if (query == null) {
+            return Integer.MIN_VALUE;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(parameter.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return Integer.MIN_VALUE;
+                }
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * send method sends a JSON answer and closes the exchange.
+     *
+     * @param exchange
+     * @param status
+     * @param body
+     * @throws IOException
+     */
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    // Getters
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * QTable interface: Storage of the Q-value of every cell of a map, indexed by row * cols + col. Every Q-value
+ * starts at 0. The engine only talks to its Q-table through this interface, so the way the Q-values are stored
+ * can be chosen per engine with the QTableType of its hyperparameters. The table only holds the Q-values; the map
+ * and the cached greedy policy stay dense arrays in the engine.
+ *
+ * @author Harshal
+ */
+public interface QTable {
+
+    /**
+     * create method creates an empty Q-table of the given type for a map with the given number of cells.
+     *
+     * @param type
+     * @param cells
+     * @param maxBytes - memory cap of a sparse table, 0 for no cap
+     * @param bound - largest absolute Q-value, sets the scale of an int16 table
+     * @return QTable
+     */
+    static QTable create(QTableType type, int cells, long maxBytes, double bound) {
+        switch (type) {
+            case SPARSE:
+                return new SparseQTable(cells, maxBytes);
+            case FLOAT32:
+                return new FloatQTable(cells);
+            case INT16:
+                return new FixedQTable(cells, bound);
+            case DENSE:
+            default:
+                return new DenseQTable(cells);
+        }
+    }
+
+    /**
+     * get method returns the Q-value of a cell.
+     *
+     * @param index
+     * @return double
+     */
+    double get(int index);
+
+    /**
+     * set method changes the Q-value of a cell.
+     *
+     * @param index
+     * @param value
+     */
+    void set(int index, double value);
+
+    /**
+     * compareAndSet method changes the Q-value of a cell only if it still is the expected value. It is atomic on
+     * tables that are concurrent, see isConcurrent.
+     *
+     * @param index
+     * @param expected
+     * @param value
+     * @return boolean - whether the Q-value was changed
+     */
+    boolean compareAndSet(int index, double expected, double value);
+
+    /**
+     * round method returns the value the table really stores when it is given a Q-value. Tables with less
+     * precision than a double round it.
+     *
+     * @param value
+     * @return double
+     */
+    default double round(double value) {
+        return value;
+    }
+
+    /**
+     * round method returns the value the table stores for the result of a learning update. Tables with less
+     * precision than a double round it up or down at random, with the chance of the nearer step, so the expected
+     * stored value is the value itself: an update smaller than a step still moves the Q-value by a whole step
+     * now and then instead of always being rounded away.
+     *
+     * @param value
+     * @param random
+     * @return double
+     */
+    default double round(double value, SplittableRandom random) {
+        return round(value);
+    }
+
+    /**
+     * getStep method returns the smallest change the table can store in a Q-value, 0 if it keeps the precision of
+     * a double (or of a float, whose steps shrink with the value).
+     *
+     * @return double
+     */
+    default double getStep() {
+        return 0;
+    }
+
+    /**
+     * isConcurrent method tells whether several threads may train on the table at the same time.
+     *
+     * @return boolean
+     */
+    boolean isConcurrent();
+
+    /**
+     * isCapped method tells whether the table drops Q-values to stay within a memory cap. A planner must not run
+     * on such a table: every Bellman value it writes can evict another cell, which reads 0 again and has to be
+     * planned again, so the plan never ends.
+     *
+     * @return boolean
+     */
+    default boolean isCapped() {
+        return false;
+    }
+
+    /**
+     * copyTo method copies the Q-values of the cells from the given one on into the array, as many as fit.
+     *
+     * @param from
+     * @param target
+     */
+    default void copyTo(int from, double[] target) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] = get(from + i);
+        }
+    }
+
+    /**
+     * isSparse method tells whether the table only stores the cells whose Q-value is not 0. Snapshots and
+     * checkpoints of such a table only copy those cells as well, see copyStoredTo.
+     *
+     * @return boolean
+     */
+    default boolean isSparse() {
+        return false;
+    }
+
+    /**
+     * copyStoredTo method copies the Q-values that are not 0 of the given number of cells from the given one on,
+     * with the offset of each cell from the first one, in the order of the cells.
+     *
+     * @param from
+     * @param length
+     * @param offsets - room for length offsets
+     * @param values - room for length Q-values
+     * @return int - the number of Q-values copied
+     */
+    default int copyStoredTo(int from, int length, short[] offsets, double[] values) {
+        int stored = 0;
+        for (int i = 0; i < length; i++) {
+            double value = get(from + i);
+            if (value != 0) {
+                offsets[stored] = (short) i;
+                values[stored++] = value;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * setEvictionListener method sets the listener told about every cell whose Q-value the table dropped (and
+     * that reads 0 again) to stay within its memory. Tables that never drop a Q-value ignore it.
+     *
+     * @param listener
+     */
+    default void setEvictionListener(IntConsumer listener) {
+    }
+
+    // Getters
+    int getCells();
+
+    long getMemoryBytes();
+}
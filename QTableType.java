@@ -0,0 +1,40 @@
+/**
+ * QTableType Enum: The ways an engine can store its Q-table. A dense table keeps a double for every cell, a
+ * sparse table only keeps the cells that have been visited, up to a memory cap, and the float32 and int16 tables
+ * keep every cell with less precision in half or a quarter of the memory. The type only changes how the Q-values
+ * are stored: the engine keeps about 3 more bytes for every cell of the map whatever the type, and another 8
+ * with a dense table, for which it also caches the highest neighbouring Q-value.
+ *
+ * @author Harshal
+ */
+public enum QTableType {
+    DENSE("dense"), SPARSE("sparse"), FLOAT32("float32"), INT16("int16");
+
+    // Name used on the command line
+    private final String name;
+
+    // Constructor
+    QTableType(String name) {
+        this.name = name;
+    }
+
+    // Getter method for the command line name
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * fromName method returns the Q-table type with the given command line name.
+     *
+     * @param name
+     * @return QTableType
+     */
+    public static QTableType fromName(String name) {
+        for (QTableType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unknown Q-table type " + name);
+    }
+}
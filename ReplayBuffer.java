@@ -0,0 +1,157 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * ReplayBuffer class: A fixed size ring buffer of transitions (state, action, reward, next state) kept as one
+ * primitive array per field. When the buffer is full the oldest transition is overwritten.
+ * <p>
+ * With prioritized sampling every transition has a priority based on its last TD-error, kept in a sum tree so
+ * that sampling and updating a priority both take O(log capacity). Transitions with a large error are replayed
+ * more often.
+ *
+ * @author Harshal
+ */
+public class ReplayBuffer {
+
+    // How strongly the TD-error decides the priority, and the priority every transition gets at least
+    private static final double PRIORITY_EXPONENT = 0.6;
+    private static final double MIN_PRIORITY = 1e-3;
+
+    // The transitions, one array per field
+    private final int[] states;
+    private final byte[] actions;
+    private final int[] rewards;
+    private final int[] nextStates;
+
+    // Capacity, the slot the next transition goes to and the number of transitions stored
+    private final int capacity;
+    private int head;
+    private int size;
+
+    // Sum tree of the priorities: the leaves start at index capacity, every other node is the sum of its children
+    private final boolean prioritized;
+    private final double[] tree;
+
+    /**
+     * ReplayBuffer constructor: the capacity is rounded up to a power of two.
+     *
+     * @param capacity
+     * @param prioritized
+     */
+    public ReplayBuffer(int capacity, boolean prioritized) {
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.prioritized = prioritized;
+
+        states = new int[this.capacity];
+        actions = new byte[this.capacity];
+        rewards = new int[this.capacity];
+        nextStates = new int[this.capacity];
+        tree = prioritized ? new double[2 * this.capacity] : null;
+    }
+
+    /**
+     * add method stores a transition, overwriting the oldest one when the buffer is full.
+     *
+     * @param state
+     * @param action
+     * @param reward
+     * @param nextState
+     * @param tdError
+     */
+    public void add(int state, int action, int reward, int nextState, double tdError) {
+        states[head] = state;
+        actions[head] = (byte) action;
+        rewards[head] = reward;
+        nextStates[head] = nextState;
+        if (prioritized) {
+            setPriority(head, tdError);
+        }
+        head = (head + 1) & (capacity - 1);
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * clear method drops every stored transition, for example when the map changed and their rewards are stale.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        if (prioritized) {
+            Arrays.fill(tree, 0);
+        }
+    }
+
+    /**
+     * sample method fills slots with count randomly chosen transitions, uniformly or by priority.
+     *
+     * @param slots
+     * @param count
+     * @param random
+     */
+    public void sample(int[] slots, int count, SplittableRandom random) {
+        for (int i = 0; i < count; i++) {
+            if (!prioritized) {
+                slots[i] = random.nextInt(size);
+                continue;
+            }
+            // Walk down the sum tree to the leaf the random value falls into
+            double value = random.nextDouble() * tree[1];
+            int node = 1;
+            while (node < capacity) {
+                node <<= 1;
+                if (value >= tree[node] && tree[node + 1] > 0) {
+                    value -= tree[node];
+                    node++;
+                }
+            }
+            slots[i] = node - capacity;
+        }
+    }
+
+    /**
+     * setPriority method gives a transition the priority of its TD-error.
+     *
+     * @param slot
+     * @param tdError
+     */
+    public void setPriority(int slot, double tdError) {
+        if (!prioritized) {
+            return;
+        }
+        int node = slot + capacity;
+        double change = Math.pow(Math.abs(tdError) + MIN_PRIORITY, PRIORITY_EXPONENT) - tree[node];
+        while (node > 0) {
+            tree[node] += change;
+            node >>= 1;
+        }
+    }
+
+    // Getters
+    public int getState(int slot) {
+        return states[slot];
+    }
+
+    public int getAction(int slot) {
+        return actions[slot];
+    }
+
+    public int getReward(int slot) {
+        return rewards[slot];
+    }
+
+    public int getNextState(int slot) {
+        return nextStates[slot];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isPrioritized() {
+        return prioritized;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Snapshot class: An immutable copy of the map, the Q-table and the agent's position at one point of the
+ * training. The training thread publishes snapshots and the UI thread draws them, so the UI never reads the
+ * engine while it is training.
+ * <p>
+ * The cells are kept in chunks of 2^Engine.CHUNK_SHIFT cells. A chunk is never changed once it is in a snapshot,
+ * so the next snapshot of the engine shares every chunk that did not change in between and only copies the rest.
+ * <p>
+ * Snapshots of a sparse Q-table keep the Q-values of a chunk sparse as well: the offsets of the cells whose
+ * Q-value is not 0, in order, and their Q-values. A chunk with so many of them that the offsets would cost more
+ * than they save is kept dense.
+ *
+ * @author Harshal
+ */
+public class Snapshot {
+
+    // Rows and cols of the map
+    private final int rows;
+    private final int cols;
+
+    // Copies of the cell types and Q-values in chunks, cell index is chunk << Engine.CHUNK_SHIFT | offset
+    private final byte[][] cellTypes;
+    private final double[][] qValues;
+
+    // Offsets of the Q-values of every sparse chunk, null for a dense chunk, or null if every chunk is dense
+    private final short[][] qOffsets;
+
+    // Index of the cell the agent is standing on and of the cell it starts from
+    private final int agent;
+    private final int start;
+
+    // Episodes trained when the snapshot was taken
+    private final long episodes;
+
+    // Version of the engine the snapshot was taken at, 0 if it was not taken from an engine
+    private final int version;
+
+    /**
+     * Snapshot constructor: the chunks are owned by the snapshot (and the later snapshots sharing them) from now
+     * on and must not be changed anymore.
+     *
+     * @param rows
+     * @param cols
+     * @param cellTypes
+     * @param qValues
+     * @param agent
+     * @param start
+     * @param episodes
+     * @param version - version of the engine it was taken at, 0 if it was not taken from an engine
+     */
+    public Snapshot(int rows, int cols, byte[][] cellTypes, double[][] qValues, int agent, int start, long episodes,
+            int version) {
+        this(rows, cols, cellTypes, qValues, null, agent, start, episodes, version);
+    }
+
+    /**
+     * Snapshot constructor for sparse Q-values: a chunk with offsets holds only the Q-values of the cells at those
+     * offsets and every other cell of it has the Q-value 0.
+     *
+     * @param rows
+     * @param cols
+     * @param cellTypes
+     * @param qValues
+     * @param qOffsets - offsets of the Q-values of every sparse chunk, in order, null for a dense chunk
+     * @param agent
+     * @param start
+     * @param episodes
+     * @param version - version of the engine it was taken at, 0 if it was not taken from an engine
+     */
+    public Snapshot(int rows, int cols, byte[][] cellTypes, double[][] qValues, short[][] qOffsets, int agent,
+            int start, long episodes, int version) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cellTypes = cellTypes;
+        this.qValues = qValues;
+        this.qOffsets = qOffsets;
+        this.agent = agent;
+        this.start = start;
+        this.episodes = episodes;
+        this.version = version;
+    }
+
+    /**
+     * getShownType method returns the type the cell is drawn as: the start type for the agent's cell and the
+     * cell's own type for every other cell.
+     *
+     * @param index
+     * @return byte
+     */
+    public byte getShownType(int index) {
+        return index == agent ? Engine.START : getCellType(index);
+    }
+
+    // Getters
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public byte getCellType(int index) {
+        return cellTypes[index >>> Engine.CHUNK_SHIFT][index & ((1 << Engine.CHUNK_SHIFT) - 1)];
+    }
+
+    public double getQValue(int index) {
+        int chunk = index >>> Engine.CHUNK_SHIFT;
+        int offset = index & ((1 << Engine.CHUNK_SHIFT) - 1);
+        short[] offsets = qOffsets == null ? null : qOffsets[chunk];
+        if (offsets == null) {
+            return qValues[chunk][offset];
+        }
+        int found = Arrays.binarySearch(offsets, (short) offset);
+        return found < 0 ? 0 : qValues[chunk][found];
+    }
+
+    byte[] getCellTypeChunk(int chunk) {
+        return cellTypes[chunk];
+    }
+
+    double[] getQValueChunk(int chunk) {
+        return qValues[chunk];
+    }
+
+    short[] getQOffsetChunk(int chunk) {
+        return qOffsets == null ? null : qOffsets[chunk];
+    }
+
+    public boolean isSparse() {
+        return qOffsets != null;
+    }
+
+    public int getAgent() {
+        return agent;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public long getEpisodes() {
+        return episodes;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
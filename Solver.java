@@ -0,0 +1,37 @@
+/**
+ * Solver Enum: The ways an engine's Q-table can be filled. Q-learning samples episodes like the simulation always
+ * did, the other two plan directly on the known map.
+ *
+ * @author Harshal
+ */
+public enum Solver {
+    Q_LEARNING("q-learning"), VALUE_ITERATION("value-iteration"), PRIORITIZED_SWEEPING("prioritized-sweeping");
+
+    // Name used on the command line
+    private final String name;
+
+    // Constructor
+    Solver(String name) {
+        this.name = name;
+    }
+
+    // Getter method for the command line name
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * fromName method returns the solver with the given command line name.
+     *
+     * @param name
+     * @return Solver
+     */
+    public static Solver fromName(String name) {
+        for (Solver solver : values()) {
+            if (solver.name.equals(name)) {
+                return solver;
+            }
+        }
+        throw new IllegalArgumentException("unknown solver " + name);
+    }
+}
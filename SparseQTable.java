@@ -0,0 +1,282 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * SparseQTable class: A Q-table that only stores the cells whose Q-value is not 0, in an open addressing hash map
+ * of primitive long keys and double values (linear probing, no boxing). On huge maps the agent only ever visits a
+ * small corridor of the cells, so the table stays far smaller than a dense one.
+ * <p>
+ * Only the Q-values are sparse. The engine still keeps its map and its greedy policy cache dense, a cell type, a
+ * move table entry, a best move and a hole bit for every cell of the map, about 3 bytes per cell on top of this
+ * table. A published policy copies a best move and a cell type for every cell, 2 bytes per cell. A snapshot or a
+ * checkpoint copies a cell type for every cell but only the stored Q-values, 10 bytes each (a short offset and the
+ * double), so it costs 1 byte per cell plus 10 bytes per stored cell instead of the 9 bytes per cell of a dense
+ * table.
+ * <p>
+ * The table can be capped to a number of bytes. Once it is full, every new cell first evicts a stored one: the
+ * eviction hand walks around the table, halves the visit count of the next EVICTION_WINDOW entries it passes and
+ * evicts the one with the fewest visits among them. Entries that are not written anymore lose their visits with
+ * every pass, so stale and rarely visited cells go first. An evicted cell reads 0 again and the eviction listener
+ * is told about it. A capped table can only be learnt: a planner writes the Q-value of every cell and would keep
+ * evicting the cells it just planned, so the planners and the warm start refuse it (see isCapped).
+ * <p>
+ * The table is not thread safe, so it can only be trained on by one thread at a time.
+ *
+ * @author Harshal
+ */
+public class SparseQTable implements QTable {
+
+    // Key of an empty slot
+    private static final long EMPTY = -1;
+
+    // Bytes of a slot: key, value and visit count
+    static final int SLOT_BYTES = Long.BYTES + Double.BYTES + Integer.BYTES;
+
+    // Slots of a new table, and how many entries the eviction hand looks at to find the one to evict
+    private static final int MIN_SLOTS = 1024;
+    private static final int EVICTION_WINDOW = 16;
+
+    // Cells of the map, the largest number of slots the memory cap allows and whether that is too few for every
+    // cell, so that cells can get evicted
+    private final int cells;
+    private final int maxSlots;
+    private final boolean capped;
+
+    // Slots of the hash map, the number of stored cells and where the eviction hand is
+    private long[] keys;
+    private double[] values;
+    private int[] visits;
+    private int mask;
+    private int shift;
+    private int size;
+    private int hand;
+
+    // Cells evicted so far and the listener told about them
+    private long evictions;
+    private IntConsumer evictionListener;
+
+    /**
+     * SparseQTable constructor
+     *
+     * @param cells
+     * @param maxBytes - memory cap, 0 for no cap
+     */
+    public SparseQTable(int cells, long maxBytes) {
+        this.cells = cells;
+        // Enough slots for every cell at a load factor of 3/4 never need an eviction
+        int allSlots = Math.max(MIN_SLOTS,
+                Integer.highestOneBit((int) Math.min((long) cells * 4 / 3 + 1, 1 << 29)) << 1);
+        if (maxBytes == 0) {
+            maxSlots = allSlots;
+        } else {
+            if (maxBytes < (long) MIN_SLOTS * SLOT_BYTES) {
+                throw new IllegalArgumentException("a sparse Q-table needs at least " + (long) MIN_SLOTS * SLOT_BYTES
+                        + " bytes but the cap is " + maxBytes);
+            }
+            maxSlots = (int) Math.min(allSlots, Long.highestOneBit(maxBytes / SLOT_BYTES));
+        }
+        capped = maxSlots < allSlots;
+        allocate(MIN_SLOTS);
+    }
+
+    /**
+     * allocate method creates empty slots.
+     *
+     * @param slots
+     */
+    private void allocate(int slots) {
+        keys = new long[slots];
+        values = new double[slots];
+        visits = new int[slots];
+        Arrays.fill(keys, EMPTY);
+        mask = slots - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(slots);
+        size = 0;
+        hand = 0;
+    }
+
+    /**
+     * slot method returns the home slot of a key, from the top bits of the key times the golden ratio so that
+     * neighbouring cells spread over the whole table.
+     *
+     * @param key
+     * @return int
+     */
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * find method returns the slot holding the key, or the empty slot where it would go.
+     *
+     * @param key
+     * @return int
+     */
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public double get(int index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? 0 : values[slot];
+    }
+
+    @Override
+    public void set(int index, double value) {
+        int slot = find(index);
+        if (keys[slot] != EMPTY) {
+            values[slot] = value;
+            if (visits[slot] != Integer.MAX_VALUE) {
+                visits[slot]++;
+            }
+            return;
+        }
+        if (value == 0) {
+            // Cells that are not stored read 0 anyway
+            return;
+        }
+
+        // Keep the load factor at most 3/4, by growing while the cap allows it and by evicting afterwards
+        int evicted = -1;
+        if (size >= (keys.length >>> 2) * 3) {
+            if (keys.length < maxSlots) {
+                grow();
+            } else {
+                evicted = evict();
+            }
+            slot = find(index);
+        }
+        keys[slot] = index;
+        values[slot] = value;
+        visits[slot] = 1;
+        size++;
+
+        if (evicted >= 0 && evictionListener != null) {
+            evictionListener.accept(evicted);
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(int index, double expected, double value) {
+        if (Double.doubleToRawLongBits(get(index)) != Double.doubleToRawLongBits(expected)) {
+            return false;
+        }
+        set(index, value);
+        return true;
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    @Override
+    public boolean isCapped() {
+        return capped;
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    /**
+     * grow method doubles the slots and puts every stored cell back.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        int[] oldVisits = visits;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                visits[slot] = oldVisits[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * evict method moves the eviction hand over the next EVICTION_WINDOW stored cells, halving their visits, and
+     * removes the one with the fewest visits.
+     *
+     * @return int - the evicted cell
+     */
+    private int evict() {
+        int victim = -1;
+        int victimVisits = 0;
+        int seen = 0;
+        while (seen < EVICTION_WINDOW) {
+            if (keys[hand] != EMPTY) {
+                int count = visits[hand];
+                if (victim < 0 || count < victimVisits) {
+                    victim = hand;
+                    victimVisits = count;
+                }
+                visits[hand] = count >>> 1;
+                seen++;
+            }
+            hand = (hand + 1) & mask;
+        }
+        int cell = (int) keys[victim];
+        remove(victim);
+        evictions++;
+        return cell;
+    }
+
+    /**
+     * remove method empties a slot and moves the cells probed past it back, so every cell stays reachable from
+     * its home slot without any tombstones.
+     *
+     * @param slot
+     */
+    private void remove(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = slot(keys[next]);
+            // The cell can move into the gap if the gap is between its home slot and where it is now
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                visits[gap] = visits[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    @Override
+    public void setEvictionListener(IntConsumer listener) {
+        this.evictionListener = listener;
+    }
+
+    // Getters
+    @Override
+    public int getCells() {
+        return cells;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return (long) keys.length * SLOT_BYTES;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+}
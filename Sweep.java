@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Sweep class: Trains many (alpha, gamma, decay rate, map seed) combinations in parallel in one JVM and prints
+ * the convergence time and the final return of every combination as CSV.
+ * <p>
+ * Usage: java Sweep [gridSize] [seeds] [moves] [threads]
+ *
+ * @author Harshal
+ */
+public class Sweep {
+
+    // Values tried for every hyperparameter
+    private static final double[] ALPHAS = {0.1, 0.2, 0.4, 0.6, 0.8};
+    private static final double[] GAMMAS = {0.5, 0.7, 0.8, 0.9, 0.95};
+    private static final double[] DECAY_RATES = {0.0001, 0.0005, 0.001, 0.005};
+
+    public static void main(String[] args) {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int seeds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        // Every combination of the hyperparameters above with every map seed
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (double alpha : ALPHAS) {
+            for (double gamma : GAMMAS) {
+                for (double decayRate : DECAY_RATES) {
+                    for (long seed = 0; seed < seeds; seed++) {
+                        Hyperparameters hyperparameters = new Hyperparameters(alpha, gamma, decayRate);
+                        long mapSeed = seed;
+                        tasks.add(() -> run(gridSize, hyperparameters, mapSeed, moves));
+                    }
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.println(Result.HEADER);
+        try {
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                System.out.println(future.get().toCsv());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * run method trains one combination the same way the game does: the engine trains from the agent's position,
+     * the agent moves to the neighbour with the highest Q-value and starts again at (0, 0) when it reaches the
+     * finish node. The combination has converged as soon as the greedy path from (0, 0) reaches the finish node.
+     *
+     * @param gridSize
+     * @param hyperparameters
+     * @param seed
+     * @param moves
+     * @return Result
+     */
+    static Result run(int gridSize, Hyperparameters hyperparameters, long seed, int moves) {
+        // The map and the training each get their own stream of the seed
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom mapRandom = random.split();
+        Engine engine = new Engine(gridSize, gridSize, hyperparameters, random.split());
+        MapGenerator.generate(engine, mapRandom);
+
+        Result result = new Result(hyperparameters, seed);
+        long begin = System.nanoTime();
+        int currentPos = 0;
+        for (int move = 1; move <= moves; move++) {
+            currentPos = engine.qLearningAlgorithm(currentPos);
+            engine.moveAgent(currentPos);
+
+            // If we have reached the finish node, start again at (0, 0)
+            if (engine.getCellType(currentPos / gridSize, currentPos % gridSize) == Engine.FINISH) {
+                currentPos = 0;
+                engine.moveAgent(currentPos);
+            }
+
+            if (result.convergenceMoves < 0 && engine.greedyPathLength(0) >= 0) {
+                result.convergenceMoves = move;
+                result.convergenceMillis = (System.nanoTime() - begin) / 1e6;
+            }
+        }
+        result.episodes = engine.getTotalEpisodes();
+        result.pathLength = engine.greedyPathLength(0);
+        result.finalReturn = engine.greedyReturn(0);
+        return result;
+    }
+
+    /**
+     * Result class: The outcome of one combination of the sweep.
+     */
+    static class Result {
+
+        static final String HEADER = "alpha,gamma,decayRate,seed,convergenceMoves,convergenceMillis,episodes,"
+                + "pathLength,finalReturn";
+
+        private final Hyperparameters hyperparameters;
+        private final long seed;
+
+        // -1 when the combination never converged
+        private int convergenceMoves = -1;
+        private double convergenceMillis = -1;
+        private long episodes;
+        private int pathLength;
+        private long finalReturn;
+
+        Result(Hyperparameters hyperparameters, long seed) {
+            this.hyperparameters = hyperparameters;
+            this.seed = seed;
+        }
+
+        String toCsv() {
+            return hyperparameters.getAlpha() + "," + hyperparameters.getGamma() + "," + hyperparameters.getDecayRate()
+                    + "," + seed + "," + convergenceMoves + ","
+                    + String.format(Locale.ROOT, "%.3f", convergenceMillis) + "," + episodes + "," + pathLength + ","
+                    + finalReturn;
+        }
+    }
+}
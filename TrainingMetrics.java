@@ -0,0 +1,360 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TrainingMetrics class: Counters and a latency histogram of the training, so we can see while the simulation is
+ * running whether the agent is converging or stuck. The metrics are exposed as an MBean over JMX, and every move
+ * and every reached goal is also emitted as a JFR event (recorded with -XX:StartFlightRecording).
+ * <p>
+ * One training thread records the moves with beginMove and endMove, any number of other threads can read the
+ * metrics at the same time.
+ *
+ * @author Harshal
+ */
+public class TrainingMetrics implements TrainingMetricsMBean {
+
+    // Domain of the MBeans
+    private static final String DOMAIN = "qlearning";
+
+    // The rates are measured over windows of at least this many nanoseconds
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    // Latency histogram: bucket i counts the moves that took less than 2^i microseconds (and at least 2^(i-1))
+    private static final int BUCKETS = 40;
+
+    // Totals
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder episodes = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder goals = new LongAdder();
+    private final LongAdder holeHits = new LongAdder();
+    private final LongAdder movesToGoal = new LongAdder();
+
+    // Training time of the moves
+    private final LongAdder moveNanos = new LongAdder();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile long maxMoveNanos;
+
+    // State of the training after the last move
+    private volatile double epsilon;
+    private volatile double lastMaxDelta;
+    private volatile long movesSinceGoal;
+
+    // Start of the current rate window
+    private long windowNanos = System.nanoTime();
+    private long windowUpdates;
+    private long windowEpisodes;
+    private double updatesPerSecond;
+    private double episodesPerSecond;
+    private boolean measured;
+
+    // Move being recorded by the training thread
+    private long moveBegin;
+    private MoveEvent moveEvent;
+
+    /**
+     * register method creates metrics and registers them as the MBean qlearning:type=TrainingMetrics,name=name,
+     * replacing the MBean of an earlier run with the same name.
+     *
+     * @param name
+     * @return TrainingMetrics
+     */
+    public static TrainingMetrics register(String name) {
+        TrainingMetrics metrics = new TrainingMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=TrainingMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metrics, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        return metrics;
+    }
+
+    /**
+     * beginMove method starts timing a move, call it right before training for the move.
+     */
+    public void beginMove() {
+        moveEvent = new MoveEvent();
+        moveEvent.begin();
+        moveBegin = System.nanoTime();
+    }
+
+    /**
+     * endMove method records a move once the agent has moved. The type of the cell the agent moved to tells
+     * whether it fell into a hole or reached the goal.
+     *
+     * @param moveEpisodes
+     * @param moveUpdates
+     * @param epsilon
+     * @param maxDelta
+     * @param cellType
+     */
+    public void endMove(long moveEpisodes, long moveUpdates, double epsilon, double maxDelta, byte cellType) {
+        long nanos = System.nanoTime() - moveBegin;
+        moves.increment();
+        episodes.add(moveEpisodes);
+        updates.add(moveUpdates);
+        moveNanos.add(nanos);
+        histogram.incrementAndGet(bucket(nanos / 1000));
+        if (nanos > maxMoveNanos) {
+            maxMoveNanos = nanos;
+        }
+        this.epsilon = epsilon;
+        lastMaxDelta = maxDelta;
+
+        long length = movesSinceGoal + 1;
+        boolean hole = cellType == Engine.HOLE;
+        boolean goal = cellType == Engine.FINISH;
+        if (hole) {
+            holeHits.increment();
+        }
+        if (goal) {
+            goals.increment();
+            movesToGoal.add(length);
+            movesSinceGoal = 0;
+
+            GoalEvent goalEvent = new GoalEvent();
+            if (goalEvent.isEnabled()) {
+                goalEvent.moves = length;
+                goalEvent.commit();
+            }
+        } else {
+            movesSinceGoal = length;
+        }
+
+        MoveEvent event = moveEvent;
+        event.end();
+        if (event.shouldCommit()) {
+            event.episodes = moveEpisodes;
+            event.updates = moveUpdates;
+            event.epsilon = epsilon;
+            event.maxDelta = maxDelta;
+            event.hole = hole;
+            event.goal = goal;
+            event.commit();
+        }
+    }
+
+    /**
+     * bucket method returns the histogram bucket of a latency in microseconds.
+     *
+     * @param micros
+     * @return int
+     */
+    private static int bucket(long micros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    }
+
+    /**
+     * percentile method returns the upper bound in microseconds of the bucket holding the given fraction of the
+     * moves.
+     *
+     * @param fraction
+     * @return long
+     */
+    private long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += histogram.get(i);
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram.get(i);
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * updateRates method measures the rates over the current window and starts a new window once the current one
+     * is long enough. Until then the rates of the last full window are kept, unless there is none yet.
+     */
+    private synchronized void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - windowNanos;
+        long currentUpdates = updates.sum();
+        long currentEpisodes = episodes.sum();
+        if (elapsed >= RATE_WINDOW_NANOS || (!measured && elapsed > 0)) {
+            updatesPerSecond = (currentUpdates - windowUpdates) * 1e9 / elapsed;
+            episodesPerSecond = (currentEpisodes - windowEpisodes) * 1e9 / elapsed;
+        }
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            measured = true;
+            windowNanos = now;
+            windowUpdates = currentUpdates;
+            windowEpisodes = currentEpisodes;
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        moves.reset();
+        episodes.reset();
+        updates.reset();
+        goals.reset();
+        holeHits.reset();
+        movesToGoal.reset();
+        moveNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        maxMoveNanos = 0;
+        windowNanos = System.nanoTime();
+        windowUpdates = 0;
+        windowEpisodes = 0;
+        updatesPerSecond = 0;
+        episodesPerSecond = 0;
+        measured = false;
+    }
+
+    // Getters
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public long getEpisodes() {
+        return episodes.sum();
+    }
+
+    @Override
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    @Override
+    public long getGoalsReached() {
+        return goals.sum();
+    }
+
+    @Override
+    public long getHoleHits() {
+        return holeHits.sum();
+    }
+
+    @Override
+    public synchronized double getUpdatesPerSecond() {
+        updateRates();
+        return updatesPerSecond;
+    }
+
+    @Override
+    public synchronized double getEpisodesPerSecond() {
+        updateRates();
+        return episodesPerSecond;
+    }
+
+    @Override
+    public double getMeanMoveMicros() {
+        long count = moves.sum();
+        return count == 0 ? 0 : moveNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxMoveMicros() {
+        return maxMoveNanos / 1000;
+    }
+
+    @Override
+    public long getMoveMicrosP50() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getMoveMicrosP99() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long[] getMoveMicrosHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    @Override
+    public double getLastMaxDelta() {
+        return lastMaxDelta;
+    }
+
+    @Override
+    public double getMeanMovesToGoal() {
+        long count = goals.sum();
+        return count == 0 ? 0 : (double) movesToGoal.sum() / count;
+    }
+
+    @Override
+    public long getMovesSinceGoal() {
+        return movesSinceGoal;
+    }
+
+    @Override
+    public double getHoleHitRate() {
+        long count = moves.sum();
+        return count == 0 ? 0 : (double) holeHits.sum() / count;
+    }
+
+    /**
+     * MoveEvent class: JFR event of one move of the agent, its duration is the training time of the move.
+     */
+    @Name("qlearning.Move")
+    @Label("Agent Move")
+    @Category("Q-Learning")
+    @Description("Training for one move of the agent")
+    static class MoveEvent extends Event {
+        @Label("Episodes")
+        long episodes;
+
+        @Label("Q-Value Updates")
+        long updates;
+
+        @Label("Epsilon")
+        double epsilon;
+
+        @Label("Max Q-Value Change")
+        double maxDelta;
+
+        @Label("Hole Hit")
+        boolean hole;
+
+        @Label("Goal Reached")
+        boolean goal;
+    }
+
+    /**
+     * GoalEvent class: JFR event of the agent reaching the finish node.
+     */
+    @Name("qlearning.Goal")
+    @Label("Goal Reached")
+    @Category("Q-Learning")
+    @Description("The agent reached the finish node")
+    static class GoalEvent extends Event {
+        @Label("Moves")
+        long moves;
+    }
+}
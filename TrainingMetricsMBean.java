@@ -0,0 +1,48 @@
+/**
+ * TrainingMetricsMBean interface: The training metrics as they are shown over JMX, for example in JConsole or
+ * Java Mission Control under qlearning:type=TrainingMetrics.
+ *
+ * @author Harshal
+ */
+public interface TrainingMetricsMBean {
+
+    // Totals since the start or the last reset
+    long getMoves();
+
+    long getEpisodes();
+
+    long getUpdates();
+
+    long getGoalsReached();
+
+    long getHoleHits();
+
+    // Rates over the last second or so
+    double getUpdatesPerSecond();
+
+    double getEpisodesPerSecond();
+
+    // Training time of one move in microseconds
+    double getMeanMoveMicros();
+
+    long getMaxMoveMicros();
+
+    long getMoveMicrosP50();
+
+    long getMoveMicrosP99();
+
+    long[] getMoveMicrosHistogram();
+
+    // State of the training
+    double getEpsilon();
+
+    double getLastMaxDelta();
+
+    double getMeanMovesToGoal();
+
+    long getMovesSinceGoal();
+
+    double getHoleHitRate();
+
+    void reset();
+}